@@ -0,0 +1,84 @@
+package bench.jmh;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import bench.HotPathBenchmarks;
+
+/**
+ * Runs the benchmarks of HotPathBenchmarks under JMH, each in forked JVMs,
+ * for every combination of world size, hole density and benchmark name.
+ * Pick some with JMH's -p option, e.g., -p size=10 -p name=episode.
+ *
+ * @author agent
+ * @version 2026-10-17
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(2)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class HotPathJmh
+{
+    @Param({"10", "50", "100", "200"})
+    private int size;
+
+    @Param({"0", "0.1", "0.2"})
+    private double density;
+
+    @Param({"generate", "loadScanner", "loadText", "percept", "step",
+        "episode", "qRead", "qUpdate", "displayStats"})
+    private String name;
+
+    private bench.Benchmark benchmark;
+
+    /**
+     * Builds the world and prepares the named benchmark.
+     *
+     * @throws Exception
+     *             if the benchmark cannot be prepared.
+     */
+    @Setup
+    public void setUp() throws Exception
+    {
+        for (bench.Benchmark b : new HotPathBenchmarks(size, density)
+            .benchmarks())
+        {
+            if (b.getName().equals(name))
+            {
+                benchmark = b;
+            }
+        }
+        if (benchmark == null)
+        {
+            throw new IllegalArgumentException("No benchmark " + name);
+        }
+        benchmark.prepare();
+    }
+
+    /**
+     * Runs the operation once.
+     *
+     * @return the results consumed, so JMH keeps them alive.
+     * @throws Exception
+     *             if the operation fails.
+     */
+    @Benchmark
+    public long operation() throws Exception
+    {
+        return benchmark.run();
+    }
+}
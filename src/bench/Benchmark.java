@@ -0,0 +1,302 @@
+package bench;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * A micro-benchmark: an operation that is run repeatedly, first to warm up
+ * the JIT and then for a measured period. The measurement reports the
+ * throughput, the bytes allocated by the benchmark thread per operation and
+ * per second, and the garbage collections that happened meanwhile.
+ *
+ * Subclasses implement operation() and may override setUp(), which is called
+ * once before warming up. Results that would otherwise be dead code should
+ * be passed to consume() so the JIT cannot remove the work.
+ *
+ * The JMH module in jmh/ runs the same benchmarks in forked JVMs, through
+ * prepare() and run(), and is the one to trust for comparisons; this harness
+ * is the fallback when the tree is built without Maven.
+ *
+ * @author agent
+ * @version 2026-10-17
+ *
+ */
+public abstract class Benchmark
+{
+    // plain, so consuming a result costs no memory barrier; it is published
+    // to the volatile field once per measurement so it stays live.
+    private static long sink;
+    private static volatile long published;
+    private String name;
+
+    /**
+     * Constructor takes the name of the benchmark.
+     *
+     * @param name
+     *            the name shown in the results.
+     */
+    public Benchmark(String name)
+    {
+        this.name = name;
+    }
+
+    /**
+     * @return the name of the benchmark.
+     */
+    public String getName()
+    {
+        return name;
+    }
+
+    /**
+     * Prepares the benchmark. Called once before warming up.
+     *
+     * @throws Exception
+     *             if the benchmark cannot be prepared.
+     */
+    protected void setUp() throws Exception
+    {
+    }
+
+    /**
+     * The operation being measured.
+     *
+     * @throws Exception
+     *             if the operation fails.
+     */
+    protected abstract void operation() throws Exception;
+
+    /**
+     * Prepares the benchmark for another harness, such as JMH, that does its
+     * own warming up and measuring.
+     *
+     * @throws Exception
+     *             if the benchmark cannot be prepared.
+     */
+    public void prepare() throws Exception
+    {
+        setUp();
+    }
+
+    /**
+     * Runs the operation once, for another harness.
+     *
+     * @return the results consumed so far, for the harness to keep alive.
+     * @throws Exception
+     *             if the operation fails.
+     */
+    public long run() throws Exception
+    {
+        operation();
+        return sink;
+    }
+
+    /**
+     * Keeps a result alive so the JIT cannot eliminate the work.
+     *
+     * @param o
+     *            the result.
+     */
+    protected static void consume(Object o)
+    {
+        sink += System.identityHashCode(o);
+    }
+
+    /**
+     * Keeps a result alive so the JIT cannot eliminate the work.
+     *
+     * @param d
+     *            the result.
+     */
+    protected static void consume(double d)
+    {
+        sink += Double.doubleToRawLongBits(d);
+    }
+
+    /**
+     * Warms up and then measures the benchmark.
+     *
+     * @param warmupMillis
+     *            how long to run before measuring.
+     * @param measureMillis
+     *            how long to measure.
+     * @return the measurement.
+     * @throws Exception
+     *             if the operation fails.
+     */
+    public Result measure(long warmupMillis, long measureMillis)
+        throws Exception
+    {
+        setUp();
+        // grow the batch until it takes about a millisecond, so reading the
+        // clock does not dominate fast operations.
+        int batch = 1;
+        long end = System.nanoTime() + warmupMillis * 1000000L;
+        while (System.nanoTime() < end)
+        {
+            long start = System.nanoTime();
+            runBatch(batch);
+            if (System.nanoTime() - start < 1000000L && batch < (1 << 20))
+            {
+                batch *= 2;
+            }
+        }
+
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        long gcCount = gcCount();
+        long gcMillis = gcMillis();
+        long allocated = allocatedBytes(threads, thread);
+        long ops = 0;
+        long start = System.nanoTime();
+        end = start + measureMillis * 1000000L;
+        long now;
+        do
+        {
+            runBatch(batch);
+            ops += batch;
+            now = System.nanoTime();
+        } while (now < end);
+        allocated = allocatedBytes(threads, thread) - allocated;
+        published = sink;
+        return new Result(name, ops, now - start, allocated,
+            gcCount() - gcCount, gcMillis() - gcMillis);
+    }
+
+    /**
+     * Helper method runs the operation several times.
+     *
+     * @param n
+     *            the number of times.
+     * @throws Exception
+     *             if the operation fails.
+     */
+    private void runBatch(int n) throws Exception
+    {
+        for (int i = 0; i < n; i++)
+        {
+            operation();
+        }
+    }
+
+    /**
+     * @param threads
+     *            the thread management bean.
+     * @param thread
+     *            the id of the thread.
+     * @return the bytes allocated so far by the thread, or -1 if the JVM
+     *         does not track it.
+     */
+    private static long allocatedBytes(ThreadMXBean threads, long thread)
+    {
+        if (threads instanceof com.sun.management.ThreadMXBean)
+        {
+            return ((com.sun.management.ThreadMXBean) threads)
+                .getThreadAllocatedBytes(thread);
+        }
+        return -1;
+    }
+
+    /**
+     * @return the number of garbage collections so far.
+     */
+    private static long gcCount()
+    {
+        long count = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory
+            .getGarbageCollectorMXBeans())
+        {
+            count += Math.max(0, gc.getCollectionCount());
+        }
+        return count;
+    }
+
+    /**
+     * @return the time spent in garbage collection so far, in milliseconds.
+     */
+    private static long gcMillis()
+    {
+        long millis = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory
+            .getGarbageCollectorMXBeans())
+        {
+            millis += Math.max(0, gc.getCollectionTime());
+        }
+        return millis;
+    }
+
+    /**
+     * The measurement of one benchmark.
+     */
+    public static class Result
+    {
+        private String name;
+        private long ops;
+        private long nanos;
+        private long allocated;
+        private long gcCount;
+        private long gcMillis;
+
+        /**
+         * Constructor takes the raw measurement.
+         *
+         * @param name
+         *            the name of the benchmark.
+         * @param ops
+         *            the number of operations.
+         * @param nanos
+         *            the time they took.
+         * @param allocated
+         *            the bytes allocated meanwhile, or negative if unknown.
+         * @param gcCount
+         *            the number of garbage collections meanwhile.
+         * @param gcMillis
+         *            the time spent in garbage collection meanwhile.
+         */
+        Result(String name, long ops, long nanos, long allocated,
+            long gcCount, long gcMillis)
+        {
+            this.name = name;
+            this.ops = ops;
+            this.nanos = nanos;
+            this.allocated = allocated;
+            this.gcCount = gcCount;
+            this.gcMillis = gcMillis;
+        }
+
+        /**
+         * @return the number of operations per second.
+         */
+        public double opsPerSecond()
+        {
+            return ops / (nanos / 1e9);
+        }
+
+        /**
+         * @return the bytes allocated per operation, or NaN if unknown.
+         */
+        public double bytesPerOp()
+        {
+            return (allocated < 0) ? Double.NaN : (double) allocated / ops;
+        }
+
+        /**
+         * @return the allocation rate in megabytes per second, or NaN if
+         *         unknown.
+         */
+        public double allocationRate()
+        {
+            return (allocated < 0) ? Double.NaN
+                : (allocated / 1e6) / (nanos / 1e9);
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("%-16s %14.1f ops/s %12.1f B/op %9.1f MB/s"
+                + "  gc: %d (%d ms)", name, opsPerSecond(), bytesPerOp(),
+                allocationRate(), gcCount, gcMillis);
+        }
+    }
+}
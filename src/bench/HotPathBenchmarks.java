@@ -0,0 +1,314 @@
+package bench;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Scanner;
+
+import skeleton.MyQLearner;
+import skeleton.MyState;
+import util.Game;
+import util.GridWorldBuilder;
+import util.MarkovDecisionProcess;
+import util.Percept;
+import util.QTable;
+import util.HashStateIndex;
+import util.StateIndex;
+import util.WorldLoader;
+
+/**
+ * Benchmarks the simulation and learning hot paths: world generation and
+ * loading, Percept construction, a single step, a whole episode, Q-table
+ * reads and updates, and displayStats. Each benchmark runs on worlds of
+ * several sizes and hole densities and reports its throughput and
+ * allocation rate.
+ *
+ * Usage: java bench.HotPathBenchmarks [sizes [densities [warmup ms
+ * [measure ms]]]], where sizes and densities are comma separated, e.g.
+ * "10,50,100,200" and "0,0.1,0.2".
+ *
+ * @author agent
+ * @version 2026-10-17
+ *
+ */
+public class HotPathBenchmarks
+{
+    private static final int NUM_TUNNELS = 2;
+    private static final int NUM_GOALS = 1;
+    private static final double GAMMA = 1.0;
+    private static final double NE = 100.0;
+    private static final int TRAINING_EPISODES = 100;
+    private int size;
+    private int numHoles;
+    private String world;
+    private MarkovDecisionProcess mdp;
+    private int start;
+    private int numStates;
+
+    /**
+     * Constructor generates and loads the world the benchmarks run on.
+     *
+     * @param size
+     *            the number of rows and columns.
+     * @param density
+     *            the fraction of cells that are holes.
+     */
+    public HotPathBenchmarks(int size, double density)
+    {
+        this.size = size;
+        numHoles = (int) Math.round(density * size * size);
+        world = generate(1L);
+        mdp = new MarkovDecisionProcess(new Scanner(world), 1L);
+        start = mdp.getCurrentIndex();
+        numStates = mdp.getNumStates();
+    }
+
+    /**
+     * @param seed
+     *            the seed for the world.
+     * @return the text of a world of this size and density.
+     */
+    private String generate(long seed)
+    {
+        return new GridWorldBuilder(seed).createRandomGridWorld(size, size,
+            0, NUM_TUNNELS, numHoles, NUM_GOALS, GAMMA);
+    }
+
+    /**
+     * @return a learner that has played a few episodes in the world.
+     */
+    private MyQLearner trainedLearner()
+    {
+        MyQLearner learner = new MyQLearner("Q-Learner", 1L, NE);
+        for (int i = 0; i < TRAINING_EPISODES; i++)
+        {
+            mdp.setCurrent(start);
+            new Game(mdp, learner).play();
+        }
+        mdp.setCurrent(start);
+        return learner;
+    }
+
+    /**
+     * @return the benchmarks for this world.
+     */
+    public List<Benchmark> benchmarks()
+    {
+        List<Benchmark> benchmarks = new ArrayList<Benchmark>();
+        benchmarks.add(new Benchmark("generate")
+        {
+            private long seed;
+
+            @Override
+            protected void operation()
+            {
+                consume(generate(++seed));
+            }
+        });
+        benchmarks.add(new Benchmark("loadScanner")
+        {
+            @Override
+            protected void operation()
+            {
+                consume(new MarkovDecisionProcess(new Scanner(world), 1L));
+            }
+        });
+        benchmarks.add(new Benchmark("loadText")
+        {
+            private WorldLoader loader = new WorldLoader();
+
+            @Override
+            protected void operation()
+            {
+                consume(loader.load(world, 1L));
+            }
+        });
+        benchmarks.add(new Benchmark("percept")
+        {
+            private int index;
+
+            @Override
+            protected void operation()
+            {
+                consume(new Percept(mdp, index, 0.0));
+                index = (index + 1) % numStates;
+            }
+        });
+        benchmarks.add(new Benchmark("step")
+        {
+            private static final int EPISODE_LENGTH = 64;
+            private int t;
+
+            @Override
+            protected void operation()
+            {
+                // restart now and then rather than checking for the end, so
+                // only the step itself is measured.
+                if (++t % EPISODE_LENGTH == 0)
+                {
+                    mdp.setCurrent(start);
+                }
+                mdp.takeAction(t & 3);
+            }
+        });
+        benchmarks.add(new Benchmark("episode")
+        {
+            private MyQLearner learner;
+
+            @Override
+            protected void setUp()
+            {
+                learner = trainedLearner();
+            }
+
+            @Override
+            protected void operation()
+            {
+                mdp.setCurrent(start);
+                consume(new Game(mdp, learner).play());
+            }
+        });
+        benchmarks.add(new QTableBenchmark("qRead", false));
+        benchmarks.add(new QTableBenchmark("qUpdate", true));
+        benchmarks.add(new Benchmark("displayStats")
+        {
+            private MyQLearner learner;
+            private PrintStream out;
+            private PrintStream discard;
+
+            @Override
+            protected void setUp()
+            {
+                learner = trainedLearner();
+                out = System.out;
+                discard = new PrintStream(new OutputStream()
+                {
+                    @Override
+                    public void write(int b)
+                    {
+                    }
+                });
+            }
+
+            @Override
+            protected void operation()
+            {
+                System.setOut(discard);
+                try
+                {
+                    learner.displayStats(mdp);
+                }
+                finally
+                {
+                    System.setOut(out);
+                }
+            }
+        });
+        return benchmarks;
+    }
+
+    /**
+     * Looks up the state of every cell the way the learner does, by building
+     * its MyState and finding it in the state index, then reads or updates
+     * its Q-values.
+     */
+    private class QTableBenchmark extends Benchmark
+    {
+        private boolean update;
+        private StateIndex states;
+        private QTable q;
+        private Percept[] percepts;
+        private int index;
+
+        /**
+         * Constructor takes whether to update the values or only read them.
+         *
+         * @param name
+         *            the name of the benchmark.
+         * @param update
+         *            true to update the values.
+         */
+        QTableBenchmark(String name, boolean update)
+        {
+            super(name);
+            this.update = update;
+        }
+
+        @Override
+        protected void setUp()
+        {
+            int numActions = mdp.getActionSpace().size();
+            states = new HashStateIndex();
+            q = new QTable(states, numActions);
+            percepts = new Percept[numStates];
+            for (int i = 0; i < numStates; i++)
+            {
+                percepts[i] = new Percept(mdp, i, 0.0);
+                int s = states.intern(MyState.valueOf(percepts[i]));
+                for (int a = 0; a < numActions; a++)
+                {
+                    q.put(s, a, i + a);
+                }
+            }
+        }
+
+        @Override
+        protected void operation()
+        {
+            int s = states.find(MyState.valueOf(percepts[index]));
+            index = (index + 1) % percepts.length;
+            if (update)
+            {
+                for (int a = 0; a < q.numActions(); a++)
+                {
+                    q.add(s, a, 0.5 * (1.0 - q.get(s, a)));
+                }
+            }
+            else
+            {
+                double max = Double.NEGATIVE_INFINITY;
+                for (int a = 0; a < q.numActions(); a++)
+                {
+                    max = Math.max(max, q.get(s, a));
+                }
+                consume(max);
+            }
+        }
+    }
+
+    /**
+     * Runs every benchmark on every combination of size and density.
+     *
+     * @param args
+     *            optional sizes, densities, warmup and measurement times.
+     * @throws Exception
+     *             if a benchmark fails.
+     */
+    public static void main(String[] args) throws Exception
+    {
+        String[] sizes = ((args.length > 0) ? args[0] : "10,50,100,200")
+            .split(",");
+        String[] densities = ((args.length > 1) ? args[1] : "0,0.1,0.2")
+            .split(",");
+        long warmup = (args.length > 2) ? Long.parseLong(args[2]) : 1000;
+        long measure = (args.length > 3) ? Long.parseLong(args[3]) : 2000;
+
+        for (String size : sizes)
+        {
+            for (String density : densities)
+            {
+                HotPathBenchmarks suite = new HotPathBenchmarks(
+                    Integer.parseInt(size.trim()),
+                    Double.parseDouble(density.trim()));
+                System.out.printf("%dx%d, %d holes\n", suite.size,
+                    suite.size, suite.numHoles);
+                for (Benchmark benchmark : suite.benchmarks())
+                {
+                    System.out.println("  "
+                        + benchmark.measure(warmup, measure));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package bench;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+import skeleton.MyQLearner;
+import util.OffHeapQTable;
+import util.PackedStateIndex;
+
+/**
+ * Fills a PackedStateIndex and Q and N OffHeapQTables with many millions of
+ * state-action entries, as a full-neighborhood state encoding would, and
+ * then updates random entries the way a learner does. It reports the
+ * off-heap bytes per entry, the peak off-heap bytes while the index grows,
+ * when its old and new hash tables are both held, the time per entry and
+ * per update, the slowest single insert, which shows that the index
+ * resizes incrementally, and the garbage collections meanwhile.
+ *
+ * The index starts empty, so it grows many times while it fills. The
+ * states are random long codes, which the index never decodes.
+ *
+ * Usage: java -XX:MaxDirectMemorySize=2g bench.LargeTableBenchmark
+ * [entries [actions [updates]]].
+ *
+ * @author agent
+ * @version 2026-10-17
+ *
+ */
+public class LargeTableBenchmark
+{
+    private static final double MB = 1024.0 * 1024.0;
+
+    /**
+     * @return the number of garbage collections so far.
+     */
+    private static long gcCount()
+    {
+        long count = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory
+            .getGarbageCollectorMXBeans())
+        {
+            count += Math.max(0, gc.getCollectionCount());
+        }
+        return count;
+    }
+
+    /**
+     * @return the milliseconds spent in garbage collection so far.
+     */
+    private static long gcMillis()
+    {
+        long millis = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory
+            .getGarbageCollectorMXBeans())
+        {
+            millis += Math.max(0, gc.getCollectionTime());
+        }
+        return millis;
+    }
+
+    /**
+     * Helper method returns the code of the i-th state. Multiplying by an
+     * odd number is one-to-one, so the codes are distinct but scattered.
+     *
+     * @param i
+     *            the number of the state.
+     * @return its code.
+     */
+    private static long code(long i)
+    {
+        return i * 0x9e3779b97f4a7c15L;
+    }
+
+    /**
+     * Fills the tables and then updates them.
+     *
+     * @param args
+     *            optional number of entries, actions and updates.
+     */
+    public static void main(String[] args)
+    {
+        long entries = (args.length > 0) ? Long.parseLong(args[0]) : 50000000L;
+        int numActions = (args.length > 1) ? Integer.parseInt(args[1]) : 4;
+        int updates = (args.length > 2) ? Integer.parseInt(args[2])
+            : 20000000;
+        int numStates = (int) (entries / numActions);
+
+        PackedStateIndex states = new PackedStateIndex(new MyQLearner(
+            "codec"), 0);
+        OffHeapQTable q = new OffHeapQTable(states, numActions);
+        OffHeapQTable n = new OffHeapQTable(states, numActions);
+        long gcCount = gcCount();
+        long gcMillis = gcMillis();
+        long slowest = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < numStates; i++)
+        {
+            long t = System.nanoTime();
+            int s = states.internCode(code(i));
+            slowest = Math.max(slowest, System.nanoTime() - t);
+            for (int a = 0; a < numActions; a++)
+            {
+                q.put(s, a, a);
+                n.put(s, a, 0.0);
+            }
+        }
+        double fillSeconds = (System.nanoTime() - start) / 1e9;
+        long total = entries;
+        long bytes = states.memoryBytes() + q.memoryBytes()
+            + n.memoryBytes();
+        System.out.printf("%d states x %d actions = %d entries\n",
+            states.size(), numActions, total);
+        System.out.printf("off-heap: index %.1f MB, Q %.1f MB, N %.1f MB, "
+            + "total %.1f MB (%.2f bytes per entry)\n",
+            states.memoryBytes() / MB, q.memoryBytes() / MB,
+            n.memoryBytes() / MB, bytes / MB, (double) bytes / total);
+        // Q and N never shrink, so adding their final size bounds the peak
+        long peak = states.peakMemoryBytes() + q.memoryBytes()
+            + n.memoryBytes();
+        System.out.printf("off-heap peak: index %.1f MB while growing, "
+            + "total at most %.1f MB\n", states.peakMemoryBytes() / MB,
+            peak / MB);
+        Runtime runtime = Runtime.getRuntime();
+        System.out.printf("heap used %.1f MB\n",
+            (runtime.totalMemory() - runtime.freeMemory()) / MB);
+        System.out.printf("fill: %.1f ns per entry, slowest insert %.1f us,"
+            + " gc: %d (%d ms)\n", fillSeconds * 1e9 / total, slowest / 1e3,
+            gcCount() - gcCount, gcMillis() - gcMillis);
+
+        Random rand = new Random(1L);
+        double sum = 0.0;
+        gcCount = gcCount();
+        gcMillis = gcMillis();
+        start = System.nanoTime();
+        for (int i = 0; i < updates; i++)
+        {
+            int s = states.findCode(code(rand.nextInt(numStates)));
+            int a = rand.nextInt(numActions);
+            n.add(s, a, 1.0);
+            q.add(s, a, (1.0 - q.get(s, a)) / (n.get(s, a) + 1));
+            sum += q.get(s, a);
+        }
+        double updateSeconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("update: %.1f ns per update, gc: %d (%d ms) [%f]\n",
+            updateSeconds * 1e9 / updates, gcCount() - gcCount, gcMillis()
+                - gcMillis, sum / updates);
+    }
+}
@@ -0,0 +1,174 @@
+package bench;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import skeleton.MyQLambdaLearner;
+import skeleton.MyQLearner;
+import util.EpisodeDriver;
+import util.GridWorldBuilder;
+import util.MarkovDecisionProcess;
+import util.QLearner;
+import util.WorldLoader;
+
+/**
+ * Compares how fast MyQLambdaLearner learns with how fast MyQLearner does,
+ * on 10x10 worlds like the one Game plays. Each learner trains until its Q
+ * values stop changing, as Game decides, or for at most a number of
+ * episodes. For each learner the comparison reports whether it converged,
+ * and after how many episodes and seconds. It also reports how many
+ * episodes it took to first score, on average over CHECK_EVERY episodes,
+ * within TOLERANCE of what MyQLearner scores at the end of its training.
+ *
+ * Usage: java bench.LearnerComparison [worlds [most episodes]].
+ *
+ * @author agent
+ * @version 2026-10-17
+ *
+ */
+public class LearnerComparison
+{
+    private static final int SIZE = 10;
+    private static final int NUM_TUNNELS = 2;
+    private static final int NUM_HOLES = 10;
+    private static final int NUM_GOALS = 1;
+    private static final double GAMMA = 1.0;
+    private static final double NE = 100.0;
+    private static final double[] LAMBDAS = {
+        0.5, 0.9
+    };
+    private static final double CUTOFF = 0.01;
+    private static final int MAX_TRACES = 256;
+    // the convergence test Game uses
+    private static final int CHECK_EVERY = 1000;
+    private static final double Q_EPSILON = 0.05;
+    private static final int STABLE_CHECKS = 10;
+    // MyQLearner's final score is the average of its last few checks
+    private static final int FINAL_CHECKS = 10;
+    private static final double TOLERANCE = 2.0;
+
+    /**
+     * The learning curve and cost of training one learner.
+     */
+    private static class Run
+    {
+        private String name;
+        private boolean converged;
+        private int episodes;
+        private double seconds;
+        // the average score between each pair of checks
+        private List<Double> curve;
+
+        /**
+         * @return the average score of the last few checks.
+         */
+        private double finalScore()
+        {
+            int n = Math.min(FINAL_CHECKS, curve.size());
+            double sum = 0.0;
+            for (int i = curve.size() - n; i < curve.size(); i++)
+            {
+                sum += curve.get(i);
+            }
+            return sum / n;
+        }
+
+        /**
+         * @param target
+         *            the score.
+         * @return the number of episodes played by the first check whose
+         *         average score reached the target, or -1 if none did.
+         */
+        private int episodesTo(double target)
+        {
+            for (int i = 0; i < curve.size(); i++)
+            {
+                if (curve.get(i) >= target)
+                {
+                    return (i + 1) * CHECK_EVERY;
+                }
+            }
+            return -1;
+        }
+    }
+
+    /**
+     * Trains a learner on a world.
+     *
+     * @param name
+     *            the name of the learner.
+     * @param learner
+     *            the learner.
+     * @param world
+     *            the text of the world.
+     * @param seed
+     *            the seed for the world's moves.
+     * @param maxEpisodes
+     *            the most episodes to train.
+     * @return the run.
+     */
+    private static Run train(String name, QLearner learner, String world,
+        long seed, int maxEpisodes)
+    {
+        MarkovDecisionProcess mdp = new WorldLoader().load(world, seed);
+        EpisodeDriver driver = new EpisodeDriver(mdp, learner, maxEpisodes,
+            CHECK_EVERY);
+        driver.addCriterion(new EpisodeDriver.MaxQDelta(Q_EPSILON,
+            STABLE_CHECKS));
+        Run run = new Run();
+        run.name = name;
+        run.curve = new ArrayList<Double>();
+        double sum = 0.0;
+        long start = System.nanoTime();
+        while (!driver.isDone())
+        {
+            sum += driver.playEpisode();
+            if (driver.getEpisodes() % CHECK_EVERY == 0)
+            {
+                run.curve.add(sum / CHECK_EVERY);
+                sum = 0.0;
+            }
+        }
+        run.seconds = (System.nanoTime() - start) / 1e9;
+        run.converged = driver.isConverged();
+        run.episodes = driver.getEpisodes();
+        return run;
+    }
+
+    /**
+     * Trains each learner on several worlds and prints the comparison.
+     *
+     * @param args
+     *            optional number of worlds and most episodes per training.
+     */
+    public static void main(String[] args)
+    {
+        int numWorlds = (args.length > 0) ? Integer.parseInt(args[0]) : 4;
+        int maxEpisodes = (args.length > 1) ? Integer.parseInt(args[1])
+            : 1000000;
+        System.out.printf("%-12s %9s %9s %8s %9s %8s\n", "learner",
+            "converged", "episodes", "seconds", "to target", "final");
+        for (long seed = 1; seed <= numWorlds; seed++)
+        {
+            String world = new GridWorldBuilder(seed).createRandomGridWorld(
+                SIZE, SIZE, 0, NUM_TUNNELS, NUM_HOLES, NUM_GOALS, GAMMA);
+            List<Run> runs = new ArrayList<Run>();
+            runs.add(train("Q", new MyQLearner("Q", 1L, NE), world, seed,
+                maxEpisodes));
+            for (double lambda : LAMBDAS)
+            {
+                String name = String.format("Q(%.1f)", lambda);
+                runs.add(train(name, new MyQLambdaLearner(name, 1L, NE,
+                    lambda, CUTOFF, MAX_TRACES), world, seed, maxEpisodes));
+            }
+            double target = runs.get(0).finalScore() - TOLERANCE;
+            System.out.printf("world %d, target score %.2f\n", seed, target);
+            for (Run run : runs)
+            {
+                System.out.printf("%-12s %9s %9d %8.2f %9d %8.2f\n", run.name,
+                    run.converged ? "yes" : "no", run.episodes, run.seconds,
+                    run.episodesTo(target), run.finalScore());
+            }
+        }
+    }
+}
@@ -0,0 +1,255 @@
+package skeleton;
+
+import java.util.Arrays;
+
+import util.QLearner;
+
+/**
+ * A Q-learning agent with Watkins's Q(lambda) eligibility traces. Each
+ * temporal difference error updates every recently visited state-action
+ * pair, weighted by its trace, so a reward reaches the start of an episode
+ * in far fewer episodes than with MyQLearner's one-step updates.
+ *
+ * The traces are replacing: a visit sets the pair's trace to 1, and every
+ * trace decays by gamma * lambda each step. Only the few pairs whose traces
+ * are above a cut-off are kept, in an array indexed by pair with a list of
+ * the active pairs, so a step takes time in the number of active traces
+ * rather than the size of Q. An exploratory action cuts all the traces, as
+ * the rewards that follow it say nothing about the greedy policy before it.
+ *
+ * The step itself is MyQLearner's; this class only overrides how its
+ * temporal difference error updates Q, and what follows each choice.
+ *
+ * @author agent
+ * @version 2026-10-17
+ *
+ */
+public class MyQLambdaLearner extends MyQLearner
+{
+    private static final double LAMBDA = 0.9;
+    private static final double CUTOFF = 0.01;
+    private static final int MAX_TRACES = 256;
+    private final double lambda;
+    private final double cutoff;
+    private final int maxTraces;
+    // e[s,a] by pair s * numActions + a, 0 for pairs that are not active
+    private double[] trace;
+    private int numActions;
+    // the active pairs, in no particular order
+    private int[] active;
+    private int numActive;
+
+    /**
+     * The constructor takes the name.
+     *
+     * @param name
+     *            the name of the player.
+     */
+    public MyQLambdaLearner(String name)
+    {
+        this(name, 1L, NE, LAMBDA, CUTOFF, MAX_TRACES);
+    }
+
+    /**
+     * The constructor takes the name, the seed for breaking ties, the
+     * exploration threshold and how the traces decay.
+     *
+     * @param name
+     *            the name of the player.
+     * @param seed
+     *            the seed for breaking ties between actions.
+     * @param ne
+     *            the exploration threshold N_e.
+     * @param lambda
+     *            the trace decay lambda, between 0 and 1.
+     * @param cutoff
+     *            the smallest trace kept, more than 0.
+     * @param maxTraces
+     *            the most traces kept; the smallest is dropped for a new
+     *            one.
+     */
+    public MyQLambdaLearner(String name, long seed, double ne, double lambda,
+        double cutoff, int maxTraces)
+    {
+        super(name, seed, ne);
+        if (!(lambda >= 0.0 && lambda <= 1.0))
+        {
+            throw new IllegalArgumentException("Lambda " + lambda
+                + " is not between 0 and 1");
+        }
+        if (!(cutoff > 0.0))
+        {
+            throw new IllegalArgumentException("Cut-off " + cutoff
+                + " is not more than 0");
+        }
+        if (maxTraces < 1)
+        {
+            throw new IllegalArgumentException("Keep " + maxTraces
+                + " traces?");
+        }
+        this.lambda = lambda;
+        this.cutoff = cutoff;
+        this.maxTraces = maxTraces;
+        trace = new double[0];
+        active = new int[maxTraces];
+    }
+
+    @Override
+    public QLearner lane()
+    {
+        MyQLambdaLearner lane = (MyQLambdaLearner) super.lane();
+        lane.trace = new double[0];
+        lane.active = new int[maxTraces];
+        lane.numActive = 0;
+        return lane;
+    }
+
+    /**
+     * Updates Q for every active pair by its trace, after making the pair
+     * of the step active.
+     *
+     * @param s
+     *            the state id.
+     * @param a
+     *            the action index.
+     * @param delta
+     *            the temporal difference error.
+     * @param gamma
+     *            the discount rate.
+     * @param numActions
+     *            the number of actions.
+     */
+    @Override
+    protected void learn(int s, int a, double delta, double gamma,
+        int numActions)
+    {
+        layout(numActions);
+        visit(s * numActions + a);
+        update(delta, gamma * lambda);
+    }
+
+    /**
+     * Cuts the traces at the end of an episode, and after an exploratory
+     * action.
+     *
+     * @param s
+     *            the state id, or -1 at the end of an episode.
+     * @param a
+     *            the chosen action index, or -1 at the end of an episode.
+     * @param numActions
+     *            the number of actions.
+     */
+    @Override
+    protected void chose(int s, int a, int numActions)
+    {
+        layout(numActions);
+        if (s < 0 || this.value(q, s, a) != this.maxValue(s, numActions))
+        {
+            clearTraces();
+        }
+    }
+
+    /**
+     * Helper method cuts the traces if the number of actions has changed,
+     * as the pairs are laid out by it.
+     *
+     * @param numActions
+     *            the number of actions.
+     */
+    private void layout(int numActions)
+    {
+        if (numActions != this.numActions)
+        {
+            clearTraces();
+            this.numActions = numActions;
+        }
+    }
+
+    /**
+     * Helper method sets the trace of a pair to 1, making it active.
+     *
+     * @param pair
+     *            the pair, s * numActions + a.
+     */
+    private void visit(int pair)
+    {
+        if (pair >= trace.length)
+        {
+            trace = Arrays.copyOf(trace, Math.max(pair + 1,
+                2 * trace.length));
+        }
+        if (trace[pair] == 0.0)
+        {
+            if (numActive == maxTraces)
+            {
+                // drop the smallest trace, which has decayed the most
+                int smallest = 0;
+                for (int i = 1; i < numActive; i++)
+                {
+                    if (trace[active[i]] < trace[active[smallest]])
+                    {
+                        smallest = i;
+                    }
+                }
+                trace[active[smallest]] = 0.0;
+                active[smallest] = active[--numActive];
+            }
+            active[numActive++] = pair;
+        }
+        trace[pair] = 1.0;
+    }
+
+    /**
+     * Helper method updates Q for every active pair by its trace, with the
+     * pair's own step size 1 / (N[s,a] + 1), and then decays the traces,
+     * dropping those below the cut-off.
+     *
+     * @param delta
+     *            the temporal difference error.
+     * @param decay
+     *            gamma * lambda.
+     */
+    private void update(double delta, double decay)
+    {
+        int kept = 0;
+        for (int i = 0; i < numActive; i++)
+        {
+            int pair = active[i];
+            int x = pair / numActions;
+            int b = pair % numActions;
+            double alpha = 1.0 / (this.value(n, x, b) + 1);
+            this.addValue(q, x, b, alpha * delta * trace[pair]);
+            double e = trace[pair] * decay;
+            if (e < cutoff)
+            {
+                trace[pair] = 0.0;
+            }
+            else
+            {
+                trace[pair] = e;
+                active[kept++] = pair;
+            }
+        }
+        numActive = kept;
+    }
+
+    /**
+     * Helper method cuts all the traces.
+     */
+    private void clearTraces()
+    {
+        for (int i = 0; i < numActive; i++)
+        {
+            trace[active[i]] = 0.0;
+        }
+        numActive = 0;
+    }
+
+    /**
+     * @return the number of active traces.
+     */
+    public int getNumActive()
+    {
+        return numActive;
+    }
+}
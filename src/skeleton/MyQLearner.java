@@ -21,12 +21,13 @@ public class MyQLearner extends QLearner
 {
     private static final boolean DEBUG = false;
     // NE is a fixed parameter for use in the method explorationFunction. 
-    private static final double NE = 100.0;
+    protected static final double NE = 100.0;
     // Rplus (R+) is an optimistic estimate of the best possible reward obtainable in any state, which is used in the method explorationFunction.
     // Use Positive infinity for Rplus (I don't care how good a solution is if i havent explored yet)
     private static final double Rplus = Double.POSITIVE_INFINITY;
-    private State s;
-    private String a;
+    private final double ne;
+    private int s;
+    private int a;
     private double r;
     // Dr. Parry has 23 states upon convergence; class has 22 states.
     /**
@@ -37,9 +38,26 @@ public class MyQLearner extends QLearner
      */
     public MyQLearner(String name)
     {
-        super(name);
-        s = null;
-        a = null;
+        this(name, 1L, NE);
+    }
+
+    /**
+     * The constructor takes the name, the seed for breaking ties, and the
+     * number of times each action is tried before trusting its Q value.
+     * 
+     * @param name
+     *            the name of the player.
+     * @param seed
+     *            the seed for breaking ties between actions.
+     * @param ne
+     *            the exploration threshold N_e.
+     */
+    public MyQLearner(String name, long seed, double ne)
+    {
+        super(name, seed);
+        this.ne = ne;
+        s = -1;
+        a = -1;
         r = Double.NEGATIVE_INFINITY;
     }
     
@@ -57,12 +75,81 @@ public class MyQLearner extends QLearner
     {
     	Double Qsa = this.value(q, state, action);
     	Double Nsa = this.value(n, state, action);
-    	if (Nsa < this.NE) {
+    	if (Nsa < this.ne) {
     		return Rplus;
     	}
     	return Qsa;
     }
+
+    @Override
+    protected double explorationFunction(int state, int action)
+    {
+    	if (this.value(n, state, action) < ne) {
+    		return Rplus;
+    	}
+    	return this.value(q, state, action);
+    }
     
+    /**
+     * Encodes a state as its packed key and terminal flag.
+     * 
+     * @param state
+     *            the state.
+     * @return the code for the state.
+     */
+    @Override
+    protected long encodeState(State state)
+    {
+    	MyState myState = (MyState) state;
+    	return 2L * myState.key() + (myState.isTerminal() ? 1 : 0);
+    }
+
+    @Override
+    protected State decodeState(long code)
+    {
+    	return MyState.valueOf((int) (code >>> 1), (code & 1) != 0);
+    }
+    
+    /**
+     * Updates Q[s,a] by the temporal difference error of the step taken from
+     * s with a, after N[s,a] has been counted. Subclasses that spread the
+     * error over more pairs, e.g., with eligibility traces, override this.
+     * 
+     * @param s
+     *            the state id.
+     * @param a
+     *            the action index.
+     * @param delta
+     *            the error, r + gamma * max Q[s',a'] - Q[s,a].
+     * @param gamma
+     *            the discount rate.
+     * @param numActions
+     *            the number of actions.
+     */
+    protected void learn(int s, int a, double delta, double gamma,
+        int numActions)
+    {
+    	// NOTE: alpha is a FUNCTION not a VALUE
+    	double alpha = 1.0/(value(n,s,a) + 1);
+    	// add rather than put, so concurrent tables can apply it atomically
+    	this.addValue(q, s, a, alpha*delta);
+    }
+
+    /**
+     * Called once the learner has chosen its next action, or has reached a
+     * terminal state. Does nothing by default.
+     * 
+     * @param s
+     *            the state id, or -1 at the end of an episode.
+     * @param a
+     *            the chosen action index, or -1 at the end of an episode.
+     * @param numActions
+     *            the number of actions.
+     */
+    protected void chose(int s, int a, int numActions)
+    {
+    }
+
     /**
      * Plays the game using a Q-Learning agent.
      * 
@@ -71,60 +158,76 @@ public class MyQLearner extends QLearner
      * @return the desired action.
      */
     public String play(Percept percept)
+    {
+    	int action = this.playAction(percept);
+    	return (action >= 0) ? percept.actionSpace().name(action) : null;
+    }
+
+    /**
+     * Plays the game using a Q-Learning agent.
+     * 
+     * @param percept
+     *            the percept.
+     * @return the index of the desired action.
+     */
+    @Override
+    public int playAction(Percept percept)
     {
     	//define the constant alpha (impacting the temporal importance of observed Q utilities):
     	//TODO Dynamically get the number of states in the world (it happens to be 100 in this example (10x10)):
     	
     	//double alpha = 1.0/100.0;
     	// state s' is the current state:
-    	State sPrime = new MyState(percept);
+    	int sPrimeId = this.stateId(percept);
+    	boolean terminal = percept.isTerminal();
     	// reward r' is the current reward signal:
     	//double rPrime = percept.score();
-    	double rPrime = percept.current().reward();
+    	double rPrime = percept.reward();
     	double gamma = percept.gamma();
+    	int numActions = percept.actionSpace().size();
+    	this.useActions(percept.actionSpace());
     	// if TERMINAL?(s') then Q[s',None] <- r'
-    	if (sPrime.isTerminal()) {
-    		for (String action : percept.actions()) {
-    			this.putValue(q, sPrime, action, rPrime);
+    	if (terminal) {
+    		for (int action = 0; action < numActions; action++) {
+    			this.putValue(q, sPrimeId, action, rPrime);
     		}
     	}
-    	if (s != null) {
+    	if (s >= 0) {
     		// s is not null, increment N[s,a]:
     		this.addValue(n, s, a, 1.0);
-    		double alpha = 1.0/(value(getN(),s,a) + 1);
     		// get Q[s,a]:
-    		Double Q_sa = this.value(q, s, a);
+    		double Q_sa = this.value(q, s, a);
     		// get Q[s',a']
-    		Double QPrime_sa = this.maxValue(sPrime, percept.actions());
+    		double QPrime_sa = this.maxValue(sPrimeId, numActions);
     		//Double QPrime_sa = this.value(q, sPrime, this.maxAction(sPrime, percept.actions()));
     		// get Q[s',a']-Q[s,a]:
-    		Double deltaQUtil = r + ((gamma * QPrime_sa) - Q_sa);
+    		double deltaQUtil = r + ((gamma * QPrime_sa) - Q_sa);
     		// update the deltaQUtil
-    		// NOTE: alpha is a FUNCTION not a VALUE
-    		this.putValue(q, s, a, 
-    				(Q_sa+(alpha*deltaQUtil)));
+    		this.learn(s, a, deltaQUtil, gamma, numActions);
     	}
-    	if (sPrime.isTerminal()) {
-    		s = null;
-    		a = null;
+    	if (terminal) {
+    		s = -1;
+    		a = -1;
     		r = Double.NEGATIVE_INFINITY;
+    		this.chose(s, a, numActions);
     		if (this.DEBUG) {
     			// TODO: Print the utilities and policy for every state when a terminal state is reached. 
     			//	Use a capital A for state that has been visited NE times. 
     			// this.displayStatMaps(mdp);
     		}
     	} else {
-    		s = sPrime;
-	    	a = this.maxExplorationAction(sPrime, percept.actions());
+    		s = sPrimeId;
+	    	a = this.maxExplorationAction(sPrimeId, numActions);
 	    	// source: https://github.com/aimacode/aima-java/blob/AIMA3e/aima-core/src/main/java/aima/core/learning/reinforcement/agent/QLearningAgent.java    	
 	    	r = rPrime;
+	    	this.chose(s, a, numActions);
     	}
     	//System.out.println(System.identityHashCode(sPrime));
     	if (this.DEBUG) {
-    		System.out.printf("Agent Chose Action: %s\n", a);
+    		System.out.printf("Agent Chose Action: %s\n", a < 0 ? null : this.actionName(a));
     		System.out.printf("Reward Currently: %.2f\n", rPrime);
-    		System.out.printf("N: %s\n", this.n);
-    		System.out.printf("Q: %s\n", this.q);
+    		System.out.printf("N: %s\n", this.getN());
+    		System.out.printf("Q: %s\n", this.getQ());
     	}
     	//System.out.printf("Q: %s \n N: %s",this.q, this.n);
     	return a;
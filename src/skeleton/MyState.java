@@ -1,5 +1,7 @@
 package skeleton;
 
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
 import util.GridCell;
 import util.Percept;
 import util.State;
@@ -7,17 +9,35 @@ import util.State;
 /**
  * The state encodes sufficient information for your Q-Learner to choose a good
  * action.
+ * 
+ * The type of the north, east, south, west and current cells are packed 3
+ * bits apiece into a single int key, which is also the hash code.
  *
  * @author Mitch Parry
  * @version 2016-04-26
  */
 public class MyState extends State
 {
-    private String north;
-    private String east;
-    private String south;
-    private String west;
-    private String current;
+    private static final String[] TYPES = {
+        "X", "+", "-", " ", "O"
+    };
+    private static final int OUTSIDE = 0;
+    private static final int GOAL = 1;
+    private static final int HOLE = 2;
+    private static final int NORMAL = 3;
+    private static final int OTHER = 4;
+    private static final int BITS = 3;
+    private static final int MASK = (1 << BITS) - 1;
+    private static final int NORTH = 0;
+    private static final int EAST = BITS;
+    private static final int SOUTH = 2 * BITS;
+    private static final int WEST = 3 * BITS;
+    private static final int CURRENT = 4 * BITS;
+    private static final int NUM_KEYS = 1 << (5 * BITS);
+    // shared instances, indexed by key and then terminal flag
+    private static final AtomicReferenceArray<MyState> CACHE =
+        new AtomicReferenceArray<MyState>(2 * NUM_KEYS);
+    private final int key;
 
     /**
      * Use the percept information to create a state.
@@ -28,17 +48,85 @@ public class MyState extends State
     public MyState(Percept p)
     {
         super(p);
-        int c = Percept.NEIGHBORHOOD_SIZE / 2;
-        GridCell[][] neighborhood = p.neighborhood();
-        north = getType(neighborhood[c - 1][c]);
-        east = getType(neighborhood[c][c + 1]);
-        south = getType(neighborhood[c + 1][c]);
-        west = getType(neighborhood[c][c - 1]);
-        current = getType(neighborhood[c][c]);
-        if (current != " ")
+        key = key(p);
+    }
+
+    /**
+     * Constructor takes the packed key.
+     * 
+     * @param key
+     *            the packed key
+     * @param terminal
+     *            true if the state is terminal
+     */
+    private MyState(int key, boolean terminal)
+    {
+        super(terminal);
+        this.key = key;
+    }
+
+    /**
+     * Returns the shared state for the percept, creating it only the first
+     * time its key is seen.
+     * 
+     * @param p
+     *            the percept
+     * @return the state
+     */
+    public static MyState valueOf(Percept p)
+    {
+        return valueOf(key(p), p.isTerminal());
+    }
+
+    /**
+     * Returns the shared state for the packed key.
+     * 
+     * @param key
+     *            the packed key
+     * @param terminal
+     *            true if the state is terminal
+     * @return the state
+     */
+    public static MyState valueOf(int key, boolean terminal)
+    {
+        int i = 2 * key + (terminal ? 1 : 0);
+        MyState s = CACHE.get(i);
+        if (s == null)
         {
-            north = east = south = west = current;
+            CACHE.compareAndSet(i, null, new MyState(key, terminal));
+            s = CACHE.get(i);
         }
+        return s;
+    }
+
+    /**
+     * Packs the state for the percept into an int without creating it.
+     * 
+     * @param p
+     *            the percept
+     * @return the packed key
+     */
+    public static int key(Percept p)
+    {
+        int current = typeCode(p.type(0, 0));
+        if (current != NORMAL)
+        {
+            return current << NORTH | current << EAST | current << SOUTH
+                | current << WEST | current << CURRENT;
+        }
+        return typeCode(p.type(-1, 0)) << NORTH
+            | typeCode(p.type(0, 1)) << EAST
+            | typeCode(p.type(1, 0)) << SOUTH
+            | typeCode(p.type(0, -1)) << WEST
+            | current << CURRENT;
+    }
+
+    /**
+     * @return the packed key.
+     */
+    public int key()
+    {
+        return key;
     }
 
     /**
@@ -48,30 +136,66 @@ public class MyState extends State
      *            the grid cell.
      * @return an integer code for the cell type.
      */
-    public String getType(GridCell cell)
+    private static int typeCode(GridCell cell)
+    {
+        return typeCode((cell == null) ? -1 : cell.type());
+    }
+
+    /**
+     * Encode the type of a grid cell.
+     * 
+     * @param type
+     *            the type of the grid cell from Percept.type.
+     * @return an integer code for the cell type.
+     */
+    private static int typeCode(int type)
     {
-        if (cell == null)
+        if (type == GridCell.GOAL)
         {
-            return "X";
+            return GOAL;
         }
-        else if (cell.isGoal())
+        else if (type == GridCell.HOLE)
         {
-            return "+";
+            return HOLE;
         }
-        else if (cell.isHole())
+        else if (type == GridCell.NORMAL)
         {
-            return "-";
+            return NORMAL;
         }
-        else if (cell.isNormal())
+        else if (type == GridCell.OTHER)
         {
-            return " ";
+            return OTHER;
         }
         else
         {
-            return "O";
+            return OUTSIDE;
         }
     }
 
+    /**
+     * Encode the type of a grid cell.
+     * 
+     * @param cell
+     *            the grid cell.
+     * @return a string code for the cell type.
+     */
+    public String getType(GridCell cell)
+    {
+        return TYPES[typeCode(cell)];
+    }
+
+    /**
+     * Helper method unpacks the type of one cell.
+     * 
+     * @param shift
+     *            the position of the cell in the key.
+     * @return the string code for the cell type.
+     */
+    private String type(int shift)
+    {
+        return TYPES[(key >>> shift) & MASK];
+    }
+
     /**
      * @return true if the state is terminal.
      */
@@ -83,22 +207,16 @@ public class MyState extends State
     @Override
     public void display()
     {
-        System.out.println("?|" + north + "|?");
-        System.out.println(west + "|" + current + "|" + east);
-        System.out.println("?|" + south + "|?");
+        System.out.println("?|" + type(NORTH) + "|?");
+        System.out.println(type(WEST) + "|" + type(CURRENT) + "|"
+            + type(EAST));
+        System.out.println("?|" + type(SOUTH) + "|?");
     }
 
     @Override
     public int hashCode()
     {
-        final int PRIME = 31;
-        int result = 1;
-        result = PRIME * result + ((current == null) ? 0 : current.hashCode());
-        result = PRIME * result + ((east == null) ? 0 : east.hashCode());
-        result = PRIME * result + ((north == null) ? 0 : north.hashCode());
-        result = PRIME * result + ((south == null) ? 0 : south.hashCode());
-        result = PRIME * result + ((west == null) ? 0 : west.hashCode());
-        return result;
+        return key;
     }
 
     @Override
@@ -116,70 +234,14 @@ public class MyState extends State
         {
             return false;
         }
-        MyState other = (MyState) obj;
-        if (current == null)
-        {
-            if (other.current != null)
-            {
-                return false;
-            }
-        }
-        else if (!current.equals(other.current))
-        {
-            return false;
-        }
-        if (east == null)
-        {
-            if (other.east != null)
-            {
-                return false;
-            }
-        }
-        else if (!east.equals(other.east))
-        {
-            return false;
-        }
-        if (north == null)
-        {
-            if (other.north != null)
-            {
-                return false;
-            }
-        }
-        else if (!north.equals(other.north))
-        {
-            return false;
-        }
-        if (south == null)
-        {
-            if (other.south != null)
-            {
-                return false;
-            }
-        }
-        else if (!south.equals(other.south))
-        {
-            return false;
-        }
-        if (west == null)
-        {
-            if (other.west != null)
-            {
-                return false;
-            }
-        }
-        else if (!west.equals(other.west))
-        {
-            return false;
-        }
-        return true;
+        return key == ((MyState) obj).key;
     }
 
     @Override
     public String toString()
     {
-        return "" + north + "," + east + "," + south + "," + west + ","
-            + current;
+        return "" + type(NORTH) + "," + type(EAST) + "," + type(SOUTH) + ","
+            + type(WEST) + "," + type(CURRENT);
     }
 
 }
@@ -0,0 +1,94 @@
+package util;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * The actions of an MDP, numbered 0, 1, ..., size() - 1 in the order they
+ * were read. The action space is immutable, so it can be shared.
+ *
+ * @author agent
+ * @version 2026-10-17
+ *
+ */
+public class ActionSpace
+{
+    private final List<String> names;
+    private final HashMap<String, Integer> indices;
+
+    /**
+     * Constructor takes the names of the actions.
+     *
+     * @param names
+     *            the names of the actions, in order.
+     */
+    public ActionSpace(List<String> names)
+    {
+        this.names = Collections.unmodifiableList(
+            Arrays.asList(names.toArray(new String[names.size()])));
+        indices = new HashMap<String, Integer>();
+        for (int i = 0; i < names.size(); i++)
+        {
+            if (indices.put(names.get(i), i) != null)
+            {
+                throw new IllegalArgumentException("Duplicate action "
+                    + names.get(i));
+            }
+        }
+    }
+
+    /**
+     * @return the number of actions.
+     */
+    public int size()
+    {
+        return names.size();
+    }
+
+    /**
+     * @param a
+     *            the action index.
+     * @return the name of the action.
+     */
+    public String name(int a)
+    {
+        return names.get(a);
+    }
+
+    /**
+     * @param action
+     *            the name of the action.
+     * @return the index of the action, or -1 if there is no such action.
+     */
+    public int indexOf(String action)
+    {
+        Integer a = (action == null) ? null : indices.get(action);
+        return (a == null) ? -1 : a;
+    }
+
+    /**
+     * @param a
+     *            the action index.
+     * @return true if a is the index of an action.
+     */
+    public boolean contains(int a)
+    {
+        return a >= 0 && a < names.size();
+    }
+
+    /**
+     * @return the read-only list of action names, in order.
+     */
+    public List<String> names()
+    {
+        return names;
+    }
+
+    @Override
+    public String toString()
+    {
+        return names.toString();
+    }
+}
@@ -0,0 +1,244 @@
+package util;
+
+import java.util.Random;
+
+/**
+ * Steps many independent episodes of one MDP in lockstep. The episodes, or
+ * lanes, are kept as parallel arrays of current state indices, scores,
+ * discounts and done flags, and all lanes sample their moves from the MDP's
+ * shared, immutable transition model, so one step of the batch is a single
+ * loop over primitive arrays with no objects per lane.
+ *
+ * A lane follows the same rules as Game.play: a lane in a terminal state
+ * becomes done at its next step, so its player sees the terminal state
+ * once, and an invalid action leaves the lane where it is without counting
+ * a step. Each lane has its own random number generator and draws one
+ * number per move.
+ *
+ * @author agent
+ * @version 2026-10-17
+ *
+ */
+public class BatchEnvironment
+{
+    private MarkovDecisionProcess mdp;
+    private TransitionModel transitions;
+    private ActionSpace actions;
+    private int numActions;
+    private double[] reward;
+    private boolean[] terminal;
+    private int numLanes;
+    private int numActive;
+    private int[] current;
+    private int[] steps;
+    private double[] score;
+    private double[] discount;
+    private boolean[] done;
+    private long[] seeds;
+
+    /**
+     * Constructor takes the MDP and the number of lanes. The lanes start out
+     * done; call reset to start them.
+     *
+     * @param mdp
+     *            the MDP, which is only read.
+     * @param numLanes
+     *            the number of episodes to step at once.
+     * @param seed
+     *            the seed for the lanes' random number generators.
+     */
+    public BatchEnvironment(MarkovDecisionProcess mdp, int numLanes, long seed)
+    {
+        this.mdp = mdp;
+        this.numLanes = numLanes;
+        transitions = mdp.getTransitions();
+        actions = mdp.getActionSpace();
+        numActions = actions.size();
+        int numStates = transitions.numStates();
+        reward = new double[numStates];
+        terminal = new boolean[numStates];
+        for (int s = 0; s < numStates; s++)
+        {
+            reward[s] = mdp.reward(s);
+            terminal[s] = mdp.isTerminal(s);
+        }
+        current = new int[numLanes];
+        steps = new int[numLanes];
+        score = new double[numLanes];
+        discount = new double[numLanes];
+        done = new boolean[numLanes];
+        seeds = new long[numLanes];
+        Random rand = new Random(seed);
+        for (int lane = 0; lane < numLanes; lane++)
+        {
+            seeds[lane] = rand.nextLong();
+            done[lane] = true;
+        }
+    }
+
+    /**
+     * Starts an episode in every lane.
+     *
+     * @param start
+     *            the index of the start state.
+     */
+    public void reset(int start)
+    {
+        for (int lane = 0; lane < numLanes; lane++)
+        {
+            reset(lane, start);
+        }
+    }
+
+    /**
+     * Starts a new episode in one lane.
+     *
+     * @param lane
+     *            the lane.
+     * @param start
+     *            the index of the start state.
+     */
+    public void reset(int lane, int start)
+    {
+        if (done[lane])
+        {
+            numActive++;
+        }
+        current[lane] = start;
+        steps[lane] = 0;
+        score[lane] = reward[start];
+        discount[lane] = 1.0;
+        done[lane] = false;
+    }
+
+    /**
+     * Moves every lane that is not done by its action.
+     *
+     * @param action
+     *            the index of the action for each lane; ignored for lanes
+     *            that are done.
+     */
+    public void step(int[] action)
+    {
+        for (int lane = 0; lane < numLanes; lane++)
+        {
+            if (done[lane])
+            {
+                continue;
+            }
+            int s = current[lane];
+            if (terminal[s])
+            {
+                done[lane] = true;
+                numActive--;
+                continue;
+            }
+            int a = action[lane];
+            if (a < 0 || a >= numActions)
+            {
+                continue;
+            }
+            int next = transitions.sample(s, a, nextDouble(lane));
+            // a state without transitions keeps the agent.
+            if (next >= 0)
+            {
+                s = next;
+                current[lane] = s;
+            }
+            steps[lane]++;
+            discount[lane] = mdp.discount(steps[lane]);
+            score[lane] += discount[lane] * reward[s];
+        }
+    }
+
+    /**
+     * Helper method draws the next uniform random number of a lane, using
+     * the SplitMix64 generator on the lane's seed.
+     *
+     * @param lane
+     *            the lane.
+     * @return a random number in [0, 1).
+     */
+    private double nextDouble(int lane)
+    {
+        long z = seeds[lane] += 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        z ^= z >>> 31;
+        return (z >>> 11) * 0x1.0p-53;
+    }
+
+    /**
+     * @return the number of lanes.
+     */
+    public int numLanes()
+    {
+        return numLanes;
+    }
+
+    /**
+     * @return the number of lanes that are not done.
+     */
+    public int numActive()
+    {
+        return numActive;
+    }
+
+    /**
+     * @return the actions, by index.
+     */
+    public ActionSpace getActionSpace()
+    {
+        return actions;
+    }
+
+    /**
+     * @param lane
+     *            the lane.
+     * @return the index of the lane's current state.
+     */
+    public int current(int lane)
+    {
+        return current[lane];
+    }
+
+    /**
+     * @param lane
+     *            the lane.
+     * @return the number of moves the lane has made in this episode.
+     */
+    public int steps(int lane)
+    {
+        return steps[lane];
+    }
+
+    /**
+     * @param lane
+     *            the lane.
+     * @return the lane's score so far.
+     */
+    public double score(int lane)
+    {
+        return score[lane];
+    }
+
+    /**
+     * @param lane
+     *            the lane.
+     * @return the discount applied to the lane's last reward.
+     */
+    public double discount(int lane)
+    {
+        return discount[lane];
+    }
+
+    /**
+     * @param lane
+     *            the lane.
+     * @return true if the lane's episode is over.
+     */
+    public boolean isDone(int lane)
+    {
+        return done[lane];
+    }
+}
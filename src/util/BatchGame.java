@@ -0,0 +1,280 @@
+package util;
+
+import skeleton.MyQLearner;
+
+/**
+ * Plays a batch of episodes of one MDP at once with a Q-learner. Each lane
+ * of the BatchEnvironment gets its own lane of the learner, which shares
+ * the learner's Q and N tables but remembers its own episode, and one
+ * reused percept shows each lane its state in turn.
+ *
+ * @author agent
+ * @version 2026-10-17
+ *
+ */
+public class BatchGame
+{
+    private MarkovDecisionProcess mdp;
+    private BatchEnvironment env;
+    private QLearner[] learners;
+    private Percept percept;
+    private int[] actions;
+
+    /**
+     * Constructor takes the MDP, the learner and the number of lanes.
+     *
+     * @param mdp
+     *            the MDP; episodes start at its current state.
+     * @param learner
+     *            the learner, between episodes.
+     * @param numLanes
+     *            the number of episodes to play at once.
+     * @param seed
+     *            the seed for the lanes' moves.
+     */
+    public BatchGame(MarkovDecisionProcess mdp, QLearner learner,
+        int numLanes, long seed)
+    {
+        this.mdp = mdp;
+        env = new BatchEnvironment(mdp, numLanes, seed);
+        learners = new QLearner[numLanes];
+        for (int lane = 0; lane < numLanes; lane++)
+        {
+            learners[lane] = learner.lane();
+        }
+        percept = new Percept(mdp);
+        actions = new int[numLanes];
+    }
+
+    /**
+     * Plays one episode in every lane, from the MDP's current state, until
+     * all of them reach a terminal state.
+     *
+     * @return the final score of each lane.
+     */
+    public double[] play()
+    {
+        int numLanes = env.numLanes();
+        env.reset(mdp.getCurrentIndex());
+        while (env.numActive() > 0)
+        {
+            for (int lane = 0; lane < numLanes; lane++)
+            {
+                if (!env.isDone(lane))
+                {
+                    percept.moveTo(env.current(lane), env.score(lane));
+                    actions[lane] = learners[lane].playAction(percept);
+                }
+            }
+            env.step(actions);
+        }
+        double[] scores = new double[numLanes];
+        for (int lane = 0; lane < numLanes; lane++)
+        {
+            scores[lane] = env.score(lane);
+        }
+        return scores;
+    }
+
+    /**
+     * @return the environment the lanes run in.
+     */
+    public BatchEnvironment getEnvironment()
+    {
+        return env;
+    }
+
+    /**
+     * A player that picks actions uniformly at random, using a xorshift
+     * generator so that drawing the action costs little next to the step.
+     */
+    private static class RandomPlayer extends Player
+    {
+        private long x;
+
+        /**
+         * Constructor takes the seed.
+         *
+         * @param seed
+         *            the seed, not zero.
+         */
+        RandomPlayer(long seed)
+        {
+            super("Random");
+            x = seed;
+        }
+
+        /**
+         * @param n
+         *            the number of actions.
+         * @return a random action index in [0, n).
+         */
+        int next(int n)
+        {
+            x ^= x << 13;
+            x ^= x >>> 7;
+            x ^= x << 17;
+            return (int) ((x >>> 33) % n);
+        }
+
+        @Override
+        public String play(Percept percept)
+        {
+            return percept.actionSpace().name(playAction(percept));
+        }
+
+        @Override
+        public int playAction(Percept percept)
+        {
+            return next(percept.actionSpace().size());
+        }
+    }
+
+    /**
+     * A player that counts the moves another player makes.
+     */
+    private static class CountingPlayer extends Player
+    {
+        private Player player;
+        private long calls;
+        private long episodes;
+
+        /**
+         * Constructor takes the player to count.
+         *
+         * @param player
+         *            the player.
+         */
+        CountingPlayer(Player player)
+        {
+            super(player.toString());
+            this.player = player;
+        }
+
+        @Override
+        public String play(Percept percept)
+        {
+            return percept.actionSpace().name(playAction(percept));
+        }
+
+        @Override
+        public int playAction(Percept percept)
+        {
+            calls++;
+            if (percept.isTerminal())
+            {
+                episodes++;
+            }
+            return player.playAction(percept);
+        }
+
+        /**
+         * @return the number of moves, not counting the look at the
+         *         terminal state that ends each episode.
+         */
+        public long getMoves()
+        {
+            return calls - episodes;
+        }
+    }
+
+    /**
+     * Compares the steps per second of Game.play and of a batch, first with
+     * random actions and then with a Q-learner, on a 10x10 world.
+     *
+     * @param args
+     *            optional number of lanes and number of steps to time.
+     */
+    public static void main(String[] args)
+    {
+        int numLanes = (args.length > 0) ? Integer.parseInt(args[0]) : 256;
+        long numSteps = (args.length > 1) ? Long.parseLong(args[1])
+            : 20000000L;
+        String world = new GridWorldBuilder(1L).createRandomGridWorld(10, 10,
+            0, 2, 10, 1, 1.0);
+        MarkovDecisionProcess mdp = new WorldLoader().load(world, 1L);
+        int start = mdp.getCurrentIndex();
+
+        // random actions: the environment alone
+        RandomPlayer randomPlayer = new RandomPlayer(1L);
+        CountingPlayer random = new CountingPlayer(randomPlayer);
+        long begin = System.nanoTime();
+        while (random.getMoves() < numSteps)
+        {
+            mdp.setCurrent(start);
+            new Game(mdp, random).play();
+        }
+        report("Game.play, random", random.getMoves(), begin);
+
+        BatchEnvironment env = new BatchEnvironment(mdp, numLanes, 1L);
+        int numActions = env.getActionSpace().size();
+        int[] actions = new int[numLanes];
+        env.reset(start);
+        long steps = 0;
+        begin = System.nanoTime();
+        while (steps < numSteps)
+        {
+            for (int lane = 0; lane < numLanes; lane++)
+            {
+                if (env.isDone(lane))
+                {
+                    steps += env.steps(lane);
+                    env.reset(lane, start);
+                }
+                actions[lane] = randomPlayer.next(numActions);
+            }
+            env.step(actions);
+        }
+        report("Batch, random", steps, begin);
+
+        // learning
+        CountingPlayer learner = new CountingPlayer(
+            new MyQLearner("Q-Learner", 1L, 100.0));
+        begin = System.nanoTime();
+        while (learner.getMoves() < numSteps / 10)
+        {
+            mdp.setCurrent(start);
+            new Game(mdp, learner).play();
+        }
+        report("Game.play, Q-learner", learner.getMoves(), begin);
+
+        mdp.setCurrent(start);
+        BatchGame batch = new BatchGame(mdp,
+            new MyQLearner("Q-Learner", 1L, 100.0), numLanes, 1L);
+        double score = 0.0;
+        int episodes = 0;
+        steps = 0;
+        begin = System.nanoTime();
+        while (steps < numSteps / 10)
+        {
+            for (double s : batch.play())
+            {
+                score += s;
+                episodes++;
+            }
+            for (int lane = 0; lane < numLanes; lane++)
+            {
+                steps += batch.getEnvironment().steps(lane);
+            }
+        }
+        report("Batch, Q-learner", steps, begin);
+        System.out.printf("Average score of %d batch episodes: %.2f\n",
+            episodes, score / episodes);
+    }
+
+    /**
+     * Helper method prints the steps per second since a time.
+     *
+     * @param what
+     *            what was timed.
+     * @param steps
+     *            the number of steps.
+     * @param begin
+     *            when the timing began, from System.nanoTime().
+     */
+    private static void report(String what, long steps, long begin)
+    {
+        double seconds = (System.nanoTime() - begin) / 1e9;
+        System.out.printf("%-22s %12.0f steps/s\n", what, steps / seconds);
+    }
+}
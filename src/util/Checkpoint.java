@@ -0,0 +1,396 @@
+package util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A snapshot of a Q-learner's Q and N tables that can be written to and read
+ * from a compact binary file, so that training can resume, or a learned
+ * policy be used, without training again.
+ *
+ * The file is big-endian and holds a header, the names of the actions in
+ * the order of their indices, and then the tables column by column, with
+ * states in the order of their ids, so each column is read and written in
+ * bulk:
+ *
+ * <pre>
+ * int     MAGIC, VERSION
+ * int     numActions
+ * numActions times:  int length, length bytes of UTF-8 name
+ * int     numStates
+ * long    code[numStates]
+ * double  Q[numStates * numActions]
+ * double  N[numStates * numActions]
+ * byte    flags[numStates * numActions]  (1 = Q written, 2 = N written)
+ * </pre>
+ *
+ * The state codes come from the learner's encodeState(), so the states
+ * themselves, e.g., MyState keys, are restored by its decodeState().
+ *
+ * @author agent
+ * @version 2026-10-17
+ *
+ */
+public class Checkpoint
+{
+    private static final int MAGIC = 0x51434B50; // "QCKP"
+    private static final int VERSION = 1;
+    private static final byte Q_WRITTEN = 1;
+    private static final byte N_WRITTEN = 2;
+    private static final int BUFFER_SIZE = 1 << 16;
+    private List<String> actions;
+    private int numStates;
+    private long[] codes;
+    private double[] q;
+    private double[] n;
+    private byte[] flags;
+
+    /**
+     * Constructor takes the size of the snapshot.
+     *
+     * @param actions
+     *            the names of the actions, by index.
+     * @param numStates
+     *            the number of states.
+     */
+    private Checkpoint(List<String> actions, int numStates)
+    {
+        this.actions = actions;
+        this.numStates = numStates;
+        int size = numStates * actions.size();
+        codes = new long[numStates];
+        q = new double[size];
+        n = new double[size];
+        flags = new byte[size];
+    }
+
+    /**
+     * Takes a snapshot of the learner's tables. Call it between episodes on
+     * the thread that trains the learner; it only copies the tables, so
+     * writing the snapshot can be left to another thread. A learner whose
+     * tables other threads are updating gives a snapshot that mixes older
+     * and newer values.
+     *
+     * @param learner
+     *            the learner.
+     * @return the snapshot.
+     * @throws UnsupportedOperationException
+     *             if the learner cannot encode its states.
+     */
+    public static Checkpoint capture(QLearner learner)
+    {
+        StateIndex states = learner.states;
+        int numStates = states.size();
+        List<String> actions = new ArrayList<String>(learner.getActions());
+        int numActions = actions.size();
+        Checkpoint checkpoint = new Checkpoint(actions, numStates);
+        for (int s = 0; s < numStates; s++)
+        {
+            checkpoint.codes[s] = learner.encodeState(states.get(s));
+            for (int a = 0; a < numActions; a++)
+            {
+                int i = s * numActions + a;
+                byte f = 0;
+                if (learner.q.contains(s, a))
+                {
+                    checkpoint.q[i] = learner.q.get(s, a);
+                    f |= Q_WRITTEN;
+                }
+                if (learner.n.contains(s, a))
+                {
+                    checkpoint.n[i] = learner.n.get(s, a);
+                    f |= N_WRITTEN;
+                }
+                checkpoint.flags[i] = f;
+            }
+        }
+        return checkpoint;
+    }
+
+    /**
+     * Replaces the learner's Q and N tables with the ones in the snapshot.
+     * The learner must not have learned other actions, or the same actions
+     * in another order. A learner with off-heap tables gets off-heap tables
+     * back; any other learner gets growable QTables, including one that was
+     * using ConcurrentQTables, as ConcurrentTrainer leaves it.
+     *
+     * @param learner
+     *            the learner, between episodes.
+     * @throws IllegalStateException
+     *             if the learner's actions do not match the snapshot's.
+     */
+    public void restore(QLearner learner)
+    {
+        int numActions = actions.size();
+        for (int a = 0; a < numActions; a++)
+        {
+            if (learner.actionId(actions.get(a)) != a)
+            {
+                throw new IllegalStateException("Actions " + actions
+                    + " do not match the learned actions "
+                    + learner.getActions());
+            }
+        }
+        if (learner.getActions().size() != numActions)
+        {
+            throw new IllegalStateException("Actions " + actions
+                + " do not match the learned actions "
+                + learner.getActions());
+        }
+        boolean offHeap = learner.states instanceof PackedStateIndex;
+        StateIndex states = offHeap
+            ? new PackedStateIndex(learner, numStates) : new HashStateIndex();
+        ValueTable newQ = offHeap ? new OffHeapQTable(states, numActions)
+            : new QTable(states, numActions);
+        ValueTable newN = offHeap ? new OffHeapQTable(states, numActions)
+            : new QTable(states, numActions);
+        for (int s = 0; s < numStates; s++)
+        {
+            int id = states.intern(learner.decodeState(codes[s]));
+            for (int a = 0; a < numActions; a++)
+            {
+                int i = s * numActions + a;
+                if ((flags[i] & Q_WRITTEN) != 0)
+                {
+                    newQ.put(id, a, q[i]);
+                }
+                if ((flags[i] & N_WRITTEN) != 0)
+                {
+                    newN.put(id, a, n[i]);
+                }
+            }
+        }
+        learner.useTables(states, newQ, newN);
+    }
+
+    /**
+     * @return the number of states in the snapshot.
+     */
+    public int numStates()
+    {
+        return numStates;
+    }
+
+    /**
+     * @return the names of the actions, by index.
+     */
+    public List<String> getActions()
+    {
+        return actions;
+    }
+
+    /**
+     * Writes the snapshot to a file. It is written to a temporary file next
+     * to it first and then moved into place, so the file always holds a
+     * whole checkpoint, even if writing fails part way.
+     *
+     * @param file
+     *            the file.
+     * @throws IOException
+     *             if the file cannot be written.
+     */
+    public void write(Path file) throws IOException
+    {
+        Path dir = file.toAbsolutePath().getParent();
+        Path temp = Files.createTempFile(dir, file.getFileName().toString(),
+            ".tmp");
+        try
+        {
+            FileChannel out = FileChannel.open(temp,
+                StandardOpenOption.WRITE);
+            try
+            {
+                write(out);
+            }
+            finally
+            {
+                out.close();
+            }
+            try
+            {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            }
+            catch (IOException e)
+            {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        finally
+        {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Helper method writes the snapshot to a channel through a small buffer.
+     *
+     * @param out
+     *            the channel.
+     * @throws IOException
+     *             if the channel cannot be written.
+     */
+    private void write(FileChannel out) throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.putInt(actions.size());
+        for (String action : actions)
+        {
+            byte[] name = action.getBytes(StandardCharsets.UTF_8);
+            flush(out, buffer, 4 + name.length);
+            buffer.putInt(name.length);
+            buffer.put(name);
+        }
+        buffer.putInt(numStates);
+        int i = 0;
+        while (i < codes.length)
+        {
+            flush(out, buffer, 8);
+            int count = Math.min(codes.length - i, buffer.remaining() / 8);
+            buffer.asLongBuffer().put(codes, i, count);
+            buffer.position(buffer.position() + 8 * count);
+            i += count;
+        }
+        for (double[] column : new double[][] {q, n})
+        {
+            i = 0;
+            while (i < column.length)
+            {
+                flush(out, buffer, 8);
+                int count = Math.min(column.length - i,
+                    buffer.remaining() / 8);
+                buffer.asDoubleBuffer().put(column, i, count);
+                buffer.position(buffer.position() + 8 * count);
+                i += count;
+            }
+        }
+        i = 0;
+        while (i < flags.length)
+        {
+            flush(out, buffer, 1);
+            int count = Math.min(flags.length - i, buffer.remaining());
+            buffer.put(flags, i, count);
+            i += count;
+        }
+        flush(out, buffer, BUFFER_SIZE);
+    }
+
+    /**
+     * Helper method writes out the buffer unless it has room for more.
+     *
+     * @param out
+     *            the channel.
+     * @param buffer
+     *            the buffer.
+     * @param needed
+     *            the number of bytes about to be put in the buffer.
+     * @throws IOException
+     *             if the channel cannot be written.
+     */
+    private static void flush(FileChannel out, ByteBuffer buffer, int needed)
+        throws IOException
+    {
+        if (buffer.remaining() >= needed)
+        {
+            return;
+        }
+        buffer.flip();
+        while (buffer.hasRemaining())
+        {
+            out.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Reads a snapshot from a file, which is mapped into memory rather than
+     * read through a stream.
+     *
+     * @param file
+     *            the file.
+     * @return the snapshot.
+     * @throws IOException
+     *             if the file cannot be read or is not a checkpoint.
+     */
+    public static Checkpoint read(Path file) throws IOException
+    {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try
+        {
+            ByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                channel.size());
+            return read(in, file);
+        }
+        finally
+        {
+            channel.close();
+        }
+    }
+
+    /**
+     * Helper method parses a snapshot.
+     *
+     * @param in
+     *            the contents of the file.
+     * @param file
+     *            the file, for error messages.
+     * @return the snapshot.
+     * @throws IOException
+     *             if the contents are not a checkpoint.
+     */
+    private static Checkpoint read(ByteBuffer in, Path file)
+        throws IOException
+    {
+        try
+        {
+            if (in.getInt() != MAGIC)
+            {
+                throw new IOException(file + " is not a checkpoint");
+            }
+            int version = in.getInt();
+            if (version != VERSION)
+            {
+                throw new IOException(file + " has checkpoint version "
+                    + version + ", not " + VERSION);
+            }
+            int numActions = in.getInt();
+            List<String> actions = new ArrayList<String>(numActions);
+            for (int a = 0; a < numActions; a++)
+            {
+                byte[] name = new byte[in.getInt()];
+                in.get(name);
+                actions.add(new String(name, StandardCharsets.UTF_8));
+            }
+            int numStates = in.getInt();
+            if (numStates < 0 || (long) numStates * (8 + 17 * numActions)
+                != in.remaining())
+            {
+                throw new IOException(file + " is truncated");
+            }
+            Checkpoint checkpoint = new Checkpoint(actions, numStates);
+            in.asLongBuffer().get(checkpoint.codes);
+            in.position(in.position() + 8 * checkpoint.codes.length);
+            in.asDoubleBuffer().get(checkpoint.q);
+            in.position(in.position() + 8 * checkpoint.q.length);
+            in.asDoubleBuffer().get(checkpoint.n);
+            in.position(in.position() + 8 * checkpoint.n.length);
+            in.get(checkpoint.flags);
+            return checkpoint;
+        }
+        catch (RuntimeException e)
+        {
+            // a negative length or a short file.
+            throw new IOException(file + " is not a valid checkpoint", e);
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Writes checkpoints of a learner on a background thread, so that training
+ * only pauses to copy the tables. If checkpoints are saved faster than they
+ * can be written, only the newest one waiting is written. A write that
+ * fails is reported by every later call to save or close.
+ *
+ * @author agent
+ * @version 2026-10-17
+ *
+ */
+public class CheckpointWriter implements Closeable
+{
+    private Path file;
+    private ExecutorService writer;
+    private AtomicReference<Checkpoint> pending;
+    private volatile IOException error;
+    private volatile int written;
+
+    /**
+     * Constructor takes the file to write.
+     *
+     * @param file
+     *            the checkpoint file, which each checkpoint replaces.
+     */
+    public CheckpointWriter(Path file)
+    {
+        this.file = file;
+        pending = new AtomicReference<Checkpoint>();
+        writer = Executors.newSingleThreadExecutor(new ThreadFactory()
+        {
+            @Override
+            public Thread newThread(Runnable r)
+            {
+                Thread t = new Thread(r, "checkpoint-writer");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+    /**
+     * Takes a snapshot of the learner and writes it in the background.
+     *
+     * @param learner
+     *            the learner, between episodes.
+     * @throws IOException
+     *             if an earlier checkpoint could not be written.
+     */
+    public void save(QLearner learner) throws IOException
+    {
+        checkError();
+        if (pending.getAndSet(Checkpoint.capture(learner)) == null)
+        {
+            writer.execute(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    Checkpoint checkpoint = pending.getAndSet(null);
+                    try
+                    {
+                        checkpoint.write(file);
+                        written++;
+                    }
+                    catch (IOException e)
+                    {
+                        error = e;
+                    }
+                    catch (RuntimeException e)
+                    {
+                        // kept, like an IOException, for the next save
+                        error = new IOException(e);
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * @return the number of checkpoints written so far.
+     */
+    public int getWritten()
+    {
+        return written;
+    }
+
+    /**
+     * Helper method reports a failed write.
+     *
+     * @throws IOException
+     *             if a checkpoint could not be written.
+     */
+    private void checkError() throws IOException
+    {
+        if (error != null)
+        {
+            throw new IOException("Could not write " + file, error);
+        }
+    }
+
+    /**
+     * Waits for the checkpoints still waiting to be written.
+     *
+     * @throws IOException
+     *             if a checkpoint could not be written, or if interrupted
+     *             while waiting.
+     */
+    @Override
+    public void close() throws IOException
+    {
+        writer.shutdown();
+        try
+        {
+            writer.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while writing " + file, e);
+        }
+        checkError();
+    }
+}
@@ -0,0 +1,210 @@
+package util;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A table of values map[s, a] that several threads can read and update at
+ * once without a lock. The values are stored as the bits of doubles in an
+ * atomic array indexed by stateId * numActions + actionIndex, so the number
+ * of states and actions is fixed when the table is made.
+ *
+ * By default add() is a compare-and-set loop, so no update is lost. In racy
+ * (Hogwild) mode add() is a plain read followed by a write, which is faster
+ * under contention but may lose an update when two threads add to the same
+ * entry at once; stochastic updates like Q-learning's tolerate that.
+ *
+ * @author agent
+ * @version 2026-10-17
+ *
+ */
+public class ConcurrentQTable extends ValueTable
+{
+    private final int capacity;
+    private final int numActions;
+    private final boolean racy;
+    private final AtomicLongArray values;
+    private final AtomicIntegerArray present;
+    private final AtomicIntegerArray stateEntries;
+    private final AtomicInteger numStates;
+
+    /**
+     * Constructor takes the index of states and the size of the table.
+     *
+     * @param states
+     *            the state index.
+     * @param capacity
+     *            the number of state ids the table can hold.
+     * @param numActions
+     *            the number of actions.
+     * @param racy
+     *            true for Hogwild updates that may lose a concurrent add.
+     */
+    public ConcurrentQTable(StateIndex states, int capacity, int numActions,
+        boolean racy)
+    {
+        super(states);
+        this.capacity = capacity;
+        this.numActions = numActions;
+        this.racy = racy;
+        values = new AtomicLongArray(capacity * numActions);
+        present = new AtomicIntegerArray(capacity * numActions);
+        stateEntries = new AtomicIntegerArray(capacity);
+        numStates = new AtomicInteger();
+    }
+
+    /**
+     * Constructor copies another table.
+     *
+     * @param table
+     *            the table to copy.
+     * @param capacity
+     *            the number of state ids the table can hold.
+     * @param racy
+     *            true for Hogwild updates that may lose a concurrent add.
+     */
+    public ConcurrentQTable(ValueTable table, int capacity, boolean racy)
+    {
+        this(table.states(), capacity, table.numActions(), racy);
+        int numIds = table.states().size();
+        for (int s = 0; s < numIds; s++)
+        {
+            for (int a = 0; a < numActions; a++)
+            {
+                if (table.contains(s, a))
+                {
+                    put(s, a, table.get(s, a));
+                }
+            }
+        }
+    }
+
+    @Override
+    public int numActions()
+    {
+        return numActions;
+    }
+
+    @Override
+    public int size()
+    {
+        return numStates.get();
+    }
+
+    /**
+     * @return the bytes of the table's arrays.
+     */
+    @Override
+    public long memoryBytes()
+    {
+        return (long) capacity * numActions * (8 + 4) + 4L * capacity;
+    }
+
+    /**
+     * The number of actions is fixed.
+     *
+     * @param n
+     *            the number of actions.
+     * @throws IllegalStateException
+     *             if n is more than the table holds.
+     */
+    @Override
+    public void ensureActions(int n)
+    {
+        if (n > numActions)
+        {
+            throw new IllegalStateException("Table holds " + numActions
+                + " actions, not " + n);
+        }
+    }
+
+    /**
+     * Helper method finds the position of an entry that is being written.
+     *
+     * @param s
+     *            the state id.
+     * @param a
+     *            the action index.
+     * @return the position of the entry.
+     * @throws IllegalStateException
+     *             if the entry is outside the table.
+     */
+    private int index(int s, int a)
+    {
+        if (s < 0 || s >= capacity || a < 0 || a >= numActions)
+        {
+            throw new IllegalStateException("Entry (" + s + ", " + a
+                + ") is outside the table of " + capacity + " states and "
+                + numActions + " actions");
+        }
+        return s * numActions + a;
+    }
+
+    @Override
+    public double get(int s, int a)
+    {
+        return (s >= 0 && s < capacity && a >= 0 && a < numActions)
+            ? Double.longBitsToDouble(values.get(s * numActions + a))
+            : 0.0;
+    }
+
+    @Override
+    public void put(int s, int a, double v)
+    {
+        int i = index(s, a);
+        values.set(i, Double.doubleToRawLongBits(v));
+        mark(s, i);
+    }
+
+    @Override
+    public void add(int s, int a, double v)
+    {
+        int i = index(s, a);
+        if (racy)
+        {
+            double old = Double.longBitsToDouble(values.get(i));
+            values.lazySet(i, Double.doubleToRawLongBits(old + v));
+        }
+        else
+        {
+            long old;
+            do
+            {
+                old = values.get(i);
+            } while (!values.compareAndSet(i, old, Double.doubleToRawLongBits(
+                Double.longBitsToDouble(old) + v)));
+        }
+        mark(s, i);
+    }
+
+    /**
+     * Helper method records that an entry has been written.
+     *
+     * @param s
+     *            the state id.
+     * @param i
+     *            the position of the entry.
+     */
+    private void mark(int s, int i)
+    {
+        if (present.get(i) == 0 && present.compareAndSet(i, 0, 1)
+            && stateEntries.getAndIncrement(s) == 0)
+        {
+            numStates.incrementAndGet();
+        }
+    }
+
+    @Override
+    public boolean contains(int s, int a)
+    {
+        return s >= 0 && s < capacity && a >= 0 && a < numActions
+            && present.get(s * numActions + a) != 0;
+    }
+
+    @Override
+    public boolean contains(int s)
+    {
+        return s >= 0 && s < capacity && stateEntries.get(s) > 0;
+    }
+}
@@ -0,0 +1,279 @@
+package util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import skeleton.MyQLearner;
+
+/**
+ * Trains one Q-learner on one world with several threads. The learner's Q
+ * and N tables are moved into ConcurrentQTables, and each thread plays its
+ * share of the episodes with its own lane of the learner and its own copy
+ * of the MDP, so the threads share nothing but the tables and the state
+ * index. Afterwards the tables are moved back into QTables, so the learner
+ * can go on to worlds with more states; off-heap tables come back on the
+ * heap.
+ *
+ * @author agent
+ * @version 2026-10-17
+ *
+ */
+public class ConcurrentTrainer
+{
+    private MarkovDecisionProcess mdp;
+    private int numThreads;
+    private boolean racy;
+    private long steps;
+    private double seconds;
+
+    /**
+     * Constructor takes the world and how to train on it.
+     *
+     * @param mdp
+     *            the MDP; episodes start at its current state.
+     * @param numThreads
+     *            the number of threads.
+     * @param racy
+     *            true for Hogwild updates that may lose a concurrent add.
+     */
+    public ConcurrentTrainer(MarkovDecisionProcess mdp, int numThreads,
+        boolean racy)
+    {
+        this.mdp = mdp;
+        this.numThreads = numThreads;
+        this.racy = racy;
+    }
+
+    /**
+     * Trains the learner. While training, the tables have room for the
+     * states it already holds, e.g., from training on another world, and
+     * one new state for each cell of this world, as its states are made
+     * from the neighborhood of one cell. When it returns normally, the
+     * learner has growable QTables again.
+     *
+     * @param learner
+     *            the learner, between episodes.
+     * @param numEpisodes
+     *            the total number of episodes over all threads.
+     * @param seed
+     *            the seed for the threads' moves and ties.
+     * @throws InterruptedException
+     *             if interrupted while waiting for the threads.
+     */
+    public void train(QLearner learner, int numEpisodes, long seed)
+        throws InterruptedException
+    {
+        learner.useActions(mdp.getActionSpace());
+        learner.useConcurrentTables(learner.states.size()
+            + mdp.getNumStates(), racy);
+        List<Worker> workers = new ArrayList<Worker>();
+        for (int i = 0; i < numThreads; i++)
+        {
+            int share = numEpisodes / numThreads
+                + ((i < numEpisodes % numThreads) ? 1 : 0);
+            workers.add(new Worker(mdp.copy(seed + i),
+                learner.lane(seed + i), share));
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(numThreads);
+        long start = System.nanoTime();
+        try
+        {
+            steps = 0;
+            for (Future<Worker> done : pool.invokeAll(workers))
+            {
+                steps += done.get().steps;
+            }
+        }
+        catch (ExecutionException e)
+        {
+            throw new IllegalStateException(e.getCause());
+        }
+        finally
+        {
+            seconds = (System.nanoTime() - start) / 1e9;
+            pool.shutdown();
+        }
+        learner.useGrowableTables();
+    }
+
+    /**
+     * @return the number of moves in the last training.
+     */
+    public long getSteps()
+    {
+        return steps;
+    }
+
+    /**
+     * @return the moves per second of the last training.
+     */
+    public double getStepsPerSecond()
+    {
+        return steps / seconds;
+    }
+
+    /**
+     * Plays more episodes on the calling thread, which the learner still
+     * learns from, and returns their average score. After training the
+     * learner explores little, so this measures how good its policy is.
+     *
+     * @param learner
+     *            the learner, between episodes.
+     * @param numEpisodes
+     *            the number of episodes.
+     * @param seed
+     *            the seed for the moves and ties.
+     * @return the average score.
+     */
+    public double evaluate(QLearner learner, int numEpisodes, long seed)
+    {
+        MarkovDecisionProcess copy = mdp.copy(seed);
+        QLearner lane = learner.lane(seed);
+        int start = copy.getCurrentIndex();
+        double score = 0.0;
+        for (int i = 1; i <= numEpisodes; i++)
+        {
+            copy.setCurrent(start);
+            score += (new Game(copy, lane).play() - score) / i;
+        }
+        return score;
+    }
+
+    /**
+     * Plays one thread's share of the episodes.
+     */
+    private static class Worker implements Callable<Worker>
+    {
+        private MarkovDecisionProcess mdp;
+        private QLearner learner;
+        private int numEpisodes;
+        private long steps;
+
+        /**
+         * Constructor takes the thread's MDP, lane and share of episodes.
+         *
+         * @param mdp
+         *            the thread's copy of the MDP.
+         * @param learner
+         *            the thread's lane of the learner.
+         * @param numEpisodes
+         *            the number of episodes to play.
+         */
+        Worker(MarkovDecisionProcess mdp, QLearner learner, int numEpisodes)
+        {
+            this.mdp = mdp;
+            this.learner = learner;
+            this.numEpisodes = numEpisodes;
+        }
+
+        @Override
+        public Worker call()
+        {
+            int start = mdp.getCurrentIndex();
+            for (int i = 0; i < numEpisodes; i++)
+            {
+                mdp.setCurrent(start);
+                Game game = new Game(mdp, learner);
+                game.play();
+                steps += game.getSteps();
+            }
+            return this;
+        }
+    }
+
+    /**
+     * Returns the fraction of non-terminal cells where the learner's policy
+     * agrees with the optimal policy.
+     *
+     * @param learner
+     *            the learner.
+     * @param planner
+     *            a planner that has solved the MDP.
+     * @return the fraction of cells where the policies agree.
+     */
+    public double agreement(QLearner learner, Planner planner)
+    {
+        HashMap<GridCell, String> learned = learner.getPolicy(mdp);
+        HashMap<GridCell, String> optimal = planner.getPolicy();
+        int agree = 0;
+        int total = 0;
+        for (GridCell cell : mdp.getStates())
+        {
+            if (!cell.isTerminal())
+            {
+                total++;
+                if (optimal.get(cell).equals(learned.get(cell)))
+                {
+                    agree++;
+                }
+            }
+        }
+        return (double) agree / total;
+    }
+
+    /**
+     * Trains on a 10x10 world with 1 to 32 threads, with and without racy
+     * updates, and reports the steps per second and how good the learned
+     * policy is: its average score over more episodes, and how often it
+     * agrees with the optimal policy.
+     *
+     * @param args
+     *            optional total number of episodes per training.
+     * @throws InterruptedException
+     *             if interrupted while training.
+     */
+    public static void main(String[] args) throws InterruptedException
+    {
+        final int EVALUATION_EPISODES = 10000;
+        final int NUM_SEEDS = 8;
+        int numEpisodes = (args.length > 0) ? Integer.parseInt(args[0])
+            : 50000;
+        String world = new GridWorldBuilder(1L).createRandomGridWorld(10, 10,
+            0, 2, 10, 1, 1.0);
+        MarkovDecisionProcess mdp = new WorldLoader().load(world, 1L);
+        Planner planner = new Planner(mdp, 1e-9, 100000,
+            ForkJoinPool.commonPool());
+        planner.valueIteration();
+        System.out.printf("%d episodes per run, %d seeds, %d cores; optimal "
+            + "utility of the start: %.2f\n", numEpisodes, NUM_SEEDS,
+            Runtime.getRuntime().availableProcessors(),
+            planner.utility(mdp.getCurrentIndex()));
+        System.out.println("threads  mode    steps/s   eval score  "
+            + "agreement");
+        for (boolean racy : new boolean[] {false, true})
+        {
+            for (int numThreads = 1; numThreads <= 32; numThreads *= 2)
+            {
+                // the learned policy varies a lot from seed to seed, so
+                // average several trainings.
+                double rate = 0.0;
+                double score = 0.0;
+                double agreement = 0.0;
+                for (long seed = 1; seed <= NUM_SEEDS; seed++)
+                {
+                    QLearner learner = new MyQLearner("Q-Learner", seed,
+                        100.0);
+                    ConcurrentTrainer trainer = new ConcurrentTrainer(mdp,
+                        numThreads, racy);
+                    trainer.train(learner, numEpisodes, 100 * seed);
+                    rate += trainer.getStepsPerSecond() / NUM_SEEDS;
+                    agreement += trainer.agreement(learner, planner)
+                        / NUM_SEEDS;
+                    score += trainer.evaluate(learner, EVALUATION_EPISODES,
+                        0L) / NUM_SEEDS;
+                }
+                System.out.printf("%7d  %-6s %10.0f %12.2f %9.1f%%\n",
+                    numThreads, racy ? "racy" : "cas", rate, score,
+                    100.0 * agreement);
+            }
+        }
+    }
+}
@@ -0,0 +1,352 @@
+package util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Plays episodes of an MDP with a Q-learner until the learner converges by
+ * every one of a set of stopping criteria, or until a maximum number of
+ * episodes. Each episode starts at the MDP's current state when the driver
+ * was made. The criteria are checked every few episodes.
+ *
+ * @author agent
+ * @version 2026-10-17
+ *
+ */
+public class EpisodeDriver
+{
+    private MarkovDecisionProcess mdp;
+    private QLearner learner;
+    private Metrics metrics;
+    private int start;
+    private int maxEpisodes;
+    private int checkEvery;
+    private List<StoppingCriterion> criteria;
+    private int episodes;
+    private boolean converged;
+
+    /**
+     * Constructor takes the MDP and learner and how long to train.
+     *
+     * @param mdp
+     *            the MDP; every episode starts at its current state.
+     * @param learner
+     *            the learner.
+     * @param maxEpisodes
+     *            the most episodes to play.
+     * @param checkEvery
+     *            the number of episodes between checks of the criteria.
+     */
+    public EpisodeDriver(MarkovDecisionProcess mdp, QLearner learner,
+        int maxEpisodes, int checkEvery)
+    {
+        if (checkEvery <= 0)
+        {
+            throw new IllegalArgumentException("Check every " + checkEvery
+                + " episodes?");
+        }
+        this.mdp = mdp;
+        this.learner = learner;
+        this.maxEpisodes = maxEpisodes;
+        this.checkEvery = checkEvery;
+        start = mdp.getCurrentIndex();
+        criteria = new ArrayList<StoppingCriterion>();
+    }
+
+    /**
+     * Adds a criterion. Training stops once all criteria are met at the
+     * same check; with none, it runs for the most episodes.
+     *
+     * @param criterion
+     *            the criterion.
+     * @return this driver.
+     */
+    public EpisodeDriver addCriterion(StoppingCriterion criterion)
+    {
+        criteria.add(criterion);
+        return this;
+    }
+
+    /**
+     * Records the episodes into a metrics registry.
+     *
+     * @param metrics
+     *            the registry, or null to record nothing.
+     */
+    public void setMetrics(Metrics metrics)
+    {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Plays one episode, and checks the criteria if it is time to.
+     *
+     * @return the score of the episode.
+     */
+    public double playEpisode()
+    {
+        mdp.setCurrent(start);
+        double score = new Game(mdp, learner, metrics).play();
+        episodes++;
+        for (StoppingCriterion criterion : criteria)
+        {
+            criterion.episodeEnded(score);
+        }
+        if (episodes % checkEvery == 0 && !criteria.isEmpty())
+        {
+            // check every criterion, even after one fails, so that each
+            // keeps track of the learner from check to check.
+            boolean all = true;
+            for (StoppingCriterion criterion : criteria)
+            {
+                all &= criterion.isConverged(learner);
+            }
+            converged = all;
+        }
+        return score;
+    }
+
+    /**
+     * @return true if training should stop: the criteria were all met at
+     *         the last check, or the most episodes have been played.
+     */
+    public boolean isDone()
+    {
+        return converged || episodes >= maxEpisodes;
+    }
+
+    /**
+     * @return true if the criteria were all met at the last check.
+     */
+    public boolean isConverged()
+    {
+        return converged;
+    }
+
+    /**
+     * Plays episodes until training should stop.
+     *
+     * @return the average score of the episodes played.
+     */
+    public double run()
+    {
+        double score = 0.0;
+        int i = 0;
+        while (!isDone())
+        {
+            i++;
+            score += (playEpisode() - score) / i;
+        }
+        return score;
+    }
+
+    /**
+     * @return the number of episodes played.
+     */
+    public int getEpisodes()
+    {
+        return episodes;
+    }
+
+    /**
+     * Met when the learner's greedy policy, the action maximizing Q[s,a] in
+     * each state it has seen, has not changed and no states have been
+     * added for a number of checks in a row. A state whose best actions
+     * have nearly equal values may switch between them as long as training
+     * goes on, so a new best action only counts as a change if it beats the
+     * old one by more than a tolerance.
+     */
+    public static class PolicyStable implements StoppingCriterion
+    {
+        private int patience;
+        private double tolerance;
+        private int[] policy;
+        private int numStates;
+        private int stableChecks;
+
+        /**
+         * Constructor takes the number of checks and the tolerance.
+         *
+         * @param patience
+         *            the number of checks in a row the policy must not
+         *            change for.
+         * @param tolerance
+         *            how much a new best action must beat the old one by.
+         */
+        public PolicyStable(int patience, double tolerance)
+        {
+            this.patience = patience;
+            this.tolerance = tolerance;
+            policy = new int[16];
+        }
+
+        @Override
+        public void episodeEnded(double score)
+        {
+        }
+
+        @Override
+        public boolean isConverged(QLearner learner)
+        {
+            int size = learner.states.size();
+            int numActions = learner.q.numActions();
+            boolean stable = size == numStates;
+            if (size > policy.length)
+            {
+                policy = Arrays.copyOf(policy, Math.max(size,
+                    2 * policy.length));
+            }
+            for (int s = 0; s < size; s++)
+            {
+                int a = learner.maxAction(s, numActions);
+                if (s >= numStates || (policy[s] != a && learner.q.get(s, a)
+                    - learner.q.get(s, policy[s]) > tolerance))
+                {
+                    policy[s] = a;
+                    stable = false;
+                }
+            }
+            numStates = size;
+            stableChecks = stable ? stableChecks + 1 : 0;
+            return stableChecks >= patience;
+        }
+    }
+
+    /**
+     * Met when no Q[s,a] has changed by more than epsilon since the previous
+     * check, and no entries have been added, for a number of checks in a
+     * row.
+     */
+    public static class MaxQDelta implements StoppingCriterion
+    {
+        private double epsilon;
+        private int patience;
+        private double[] values;
+        private int numStates;
+        private int numActions;
+        private int stableChecks;
+
+        /**
+         * Constructor takes the threshold and the number of checks.
+         *
+         * @param epsilon
+         *            the largest change allowed between checks.
+         * @param patience
+         *            the number of checks in a row Q must change by less
+         *            than epsilon.
+         */
+        public MaxQDelta(double epsilon, int patience)
+        {
+            this.epsilon = epsilon;
+            this.patience = patience;
+            values = new double[0];
+        }
+
+        @Override
+        public void episodeEnded(double score)
+        {
+        }
+
+        @Override
+        public boolean isConverged(QLearner learner)
+        {
+            ValueTable q = learner.q;
+            int size = learner.states.size();
+            // the saved rows are laid out by the number of actions, so they
+            // are only compared while it stays the same.
+            boolean stable = size == numStates
+                && q.numActions() == numActions;
+            numActions = q.numActions();
+            if (size * numActions > values.length)
+            {
+                values = Arrays.copyOf(values, Math.max(size * numActions,
+                    2 * values.length));
+            }
+            for (int s = 0; s < size; s++)
+            {
+                for (int a = 0; a < numActions; a++)
+                {
+                    double v = q.get(s, a);
+                    int i = s * numActions + a;
+                    if (Math.abs(v - values[i]) > epsilon)
+                    {
+                        stable = false;
+                    }
+                    values[i] = v;
+                }
+            }
+            numStates = size;
+            stableChecks = stable ? stableChecks + 1 : 0;
+            return stableChecks >= patience;
+        }
+    }
+
+    /**
+     * Met when the learning curve has flattened: the average score of the
+     * episodes between each pair of checks is one point on the curve, and
+     * the variance of the last few points is below a threshold.
+     */
+    public static class ScoreVariance implements StoppingCriterion
+    {
+        private double threshold;
+        private double[] points;
+        private int numPoints;
+        private double sum;
+        private int count;
+
+        /**
+         * Constructor takes the number of points and the threshold.
+         *
+         * @param window
+         *            the number of points, at least 2.
+         * @param threshold
+         *            the largest variance allowed.
+         */
+        public ScoreVariance(int window, double threshold)
+        {
+            if (window < 2)
+            {
+                throw new IllegalArgumentException("Window of " + window
+                    + " has no variance");
+            }
+            this.threshold = threshold;
+            points = new double[window];
+        }
+
+        @Override
+        public void episodeEnded(double score)
+        {
+            sum += score;
+            count++;
+        }
+
+        @Override
+        public boolean isConverged(QLearner learner)
+        {
+            if (count == 0)
+            {
+                return false;
+            }
+            points[numPoints % points.length] = sum / count;
+            numPoints++;
+            sum = 0.0;
+            count = 0;
+            if (numPoints < points.length)
+            {
+                return false;
+            }
+            double mean = 0.0;
+            for (double p : points)
+            {
+                mean += p / points.length;
+            }
+            double variance = 0.0;
+            for (double p : points)
+            {
+                variance += (p - mean) * (p - mean) / (points.length - 1);
+            }
+            return variance < threshold;
+        }
+    }
+}
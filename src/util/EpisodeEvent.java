@@ -0,0 +1,35 @@
+package util;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A Java Flight Recorder event for each episode that Game.play plays. It is
+ * only filled in and committed while a recording has it enabled, e.g., with
+ * java -XX:StartFlightRecording ..., so otherwise it costs next to nothing.
+ *
+ * @author agent
+ * @version 2026-10-17
+ *
+ */
+@Name("util.Episode")
+@Label("Episode")
+@Category("GridWorld")
+@Description("One episode of Game.play")
+class EpisodeEvent extends Event
+{
+    @Label("Steps")
+    @Description("The number of moves in the episode")
+    int steps;
+
+    @Label("Score")
+    @Description("The discounted score of the episode")
+    double score;
+
+    @Label("Start")
+    @Description("The index of the start state")
+    int start;
+}
@@ -0,0 +1,359 @@
+package util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Scanner;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import skeleton.MyQLearner;
+
+/**
+ * Runs independent Q-learning trials in parallel on a fork/join pool. Each
+ * trial generates its own world, MDP and learner, plays a fixed number of
+ * episodes, and records the running average score every few episodes the
+ * way Game.main prints it. The curves of all trials are combined into one
+ * report.
+ *
+ * @author agent
+ * @version 2026-10-17
+ *
+ */
+public class ExperimentRunner
+{
+    private int numEpisodes;
+    private int displayEvery;
+    private ForkJoinPool pool;
+
+    /**
+     * Constructor takes the length of each trial and the pool to run on.
+     *
+     * @param numEpisodes
+     *            the number of episodes per trial.
+     * @param displayEvery
+     *            the number of episodes between points on the score curve.
+     * @param pool
+     *            the fork/join pool.
+     */
+    public ExperimentRunner(int numEpisodes, int displayEvery,
+        ForkJoinPool pool)
+    {
+        if (numEpisodes < displayEvery || displayEvery <= 0)
+        {
+            throw new IllegalArgumentException("Need at least one point on "
+                + "the score curve.");
+        }
+        this.numEpisodes = numEpisodes;
+        this.displayEvery = displayEvery;
+        this.pool = pool;
+    }
+
+    /**
+     * Runs the trials in parallel.
+     *
+     * @param trials
+     *            the trials.
+     * @return the combined report.
+     */
+    public Report run(List<Trial> trials)
+    {
+        double[][] curves = new double[trials.size()][];
+        pool.invoke(new TrialTask(trials, curves, 0, trials.size()));
+        return new Report(trials, curves, displayEvery, numEpisodes);
+    }
+
+    /**
+     * Plays one trial on the calling thread.
+     *
+     * @param trial
+     *            the trial.
+     * @return the running average score after every displayEvery episodes.
+     */
+    public double[] runTrial(Trial trial)
+    {
+        MarkovDecisionProcess mdp = trial.createMdp();
+        QLearner player = trial.createLearner();
+        int start = mdp.getCurrentIndex();
+        double[] curve = new double[numEpisodes / displayEvery];
+        double score = 0.0;
+        for (int i = 1; i <= numEpisodes; i++)
+        {
+            mdp.setCurrent(start);
+            Game game = new Game(mdp, player);
+            score += (game.play() - score) / i;
+            if (i % displayEvery == 0)
+            {
+                curve[i / displayEvery - 1] = score;
+            }
+        }
+        return curve;
+    }
+
+    /**
+     * Fork/join task that splits a range of trials in half until it is down
+     * to one trial.
+     */
+    private class TrialTask extends RecursiveAction
+    {
+        private static final long serialVersionUID = 1L;
+        private List<Trial> trials;
+        private double[][] curves;
+        private int lo;
+        private int hi;
+
+        /**
+         * Constructor takes the range of trials to run.
+         *
+         * @param trials
+         *            all the trials.
+         * @param curves
+         *            the score curve of each trial, filled in by the task.
+         * @param lo
+         *            the first trial to run.
+         * @param hi
+         *            one past the last trial to run.
+         */
+        TrialTask(List<Trial> trials, double[][] curves, int lo, int hi)
+        {
+            this.trials = trials;
+            this.curves = curves;
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if (hi - lo == 1)
+            {
+                curves[lo] = runTrial(trials.get(lo));
+            }
+            else if (hi - lo > 1)
+            {
+                int mid = (lo + hi) >>> 1;
+                invokeAll(new TrialTask(trials, curves, lo, mid),
+                    new TrialTask(trials, curves, mid, hi));
+            }
+        }
+    }
+
+    /**
+     * The parameters of one trial: the world, the seeds, and the learner's
+     * exploration threshold. The world, the MDP's moves and the learner's
+     * ties each have their own seed, so no two of them share a random
+     * sequence.
+     */
+    public static class Trial
+    {
+        private int numRows;
+        private int numCols;
+        private int numRocks;
+        private int numTunnels;
+        private int numHoles;
+        private int numGoals;
+        private double gamma;
+        private long worldSeed;
+        private long mdpSeed;
+        private long learnerSeed;
+        private double ne;
+
+        /**
+         * Constructor takes the parameters of the trial.
+         *
+         * @param numRows
+         *            the number of rows in the grid world.
+         * @param numCols
+         *            the number of columns in the grid world.
+         * @param numRocks
+         *            the number of rocks in the grid world.
+         * @param numTunnels
+         *            the number of tunnels in the grid world.
+         * @param numHoles
+         *            the number of holes in the grid world.
+         * @param numGoals
+         *            the number of goals in the grid world.
+         * @param gamma
+         *            the discount factor for each move.
+         * @param worldSeed
+         *            the seed for generating the world.
+         * @param mdpSeed
+         *            the seed for the MDP's moves.
+         * @param learnerSeed
+         *            the seed for the learner's ties.
+         * @param ne
+         *            the learner's exploration threshold N_e.
+         */
+        public Trial(int numRows, int numCols, int numRocks, int numTunnels,
+            int numHoles, int numGoals, double gamma, long worldSeed,
+            long mdpSeed, long learnerSeed, double ne)
+        {
+            this.numRows = numRows;
+            this.numCols = numCols;
+            this.numRocks = numRocks;
+            this.numTunnels = numTunnels;
+            this.numHoles = numHoles;
+            this.numGoals = numGoals;
+            this.gamma = gamma;
+            this.worldSeed = worldSeed;
+            this.mdpSeed = mdpSeed;
+            this.learnerSeed = learnerSeed;
+            this.ne = ne;
+        }
+
+        /**
+         * @return a new MDP for this trial's world.
+         */
+        public MarkovDecisionProcess createMdp()
+        {
+            String world = new GridWorldBuilder(worldSeed)
+                .createRandomGridWorld(numRows, numCols, numRocks, numTunnels,
+                    numHoles, numGoals, gamma);
+            return new MarkovDecisionProcess(new Scanner(world), mdpSeed);
+        }
+
+        /**
+         * @return a new learner for this trial.
+         */
+        public QLearner createLearner()
+        {
+            return new MyQLearner("Q-Learner", learnerSeed, ne);
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("%dx%d rocks=%d tunnels=%d holes=%d "
+                + "goals=%d gamma=%s world=%d mdp=%d learner=%d Ne=%s",
+                numRows, numCols, numRocks, numTunnels, numHoles, numGoals,
+                gamma, worldSeed, mdpSeed, learnerSeed, ne);
+        }
+    }
+
+    /**
+     * The score curves of all trials and their combination.
+     */
+    public static class Report
+    {
+        private List<Trial> trials;
+        private double[][] curves;
+        private int displayEvery;
+        private int numEpisodes;
+
+        /**
+         * Constructor takes the trials and their score curves.
+         *
+         * @param trials
+         *            the trials.
+         * @param curves
+         *            the score curve of each trial.
+         * @param displayEvery
+         *            the number of episodes between points on the curves.
+         * @param numEpisodes
+         *            the number of episodes per trial.
+         */
+        Report(List<Trial> trials, double[][] curves, int displayEvery,
+            int numEpisodes)
+        {
+            this.trials = trials;
+            this.curves = curves;
+            this.displayEvery = displayEvery;
+            this.numEpisodes = numEpisodes;
+        }
+
+        /**
+         * @param trial
+         *            the index of a trial.
+         * @return the running average score curve of the trial.
+         */
+        public double[] curve(int trial)
+        {
+            return curves[trial].clone();
+        }
+
+        /**
+         * @return the mean of the running average scores over all trials.
+         */
+        public double[] meanCurve()
+        {
+            int numPoints = numEpisodes / displayEvery;
+            double[] mean = new double[numPoints];
+            for (double[] curve : curves)
+            {
+                for (int j = 0; j < numPoints; j++)
+                {
+                    mean[j] += curve[j] / curves.length;
+                }
+            }
+            return mean;
+        }
+
+        /**
+         * Displays the combined score curve and the final score of each
+         * trial.
+         */
+        public void display()
+        {
+            int numPoints = numEpisodes / displayEvery;
+            double[] mean = meanCurve();
+            System.out.printf("%d trials of %d episodes\n", curves.length,
+                numEpisodes);
+            for (int j = 0; j < numPoints; j++)
+            {
+                double min = Double.POSITIVE_INFINITY;
+                double max = Double.NEGATIVE_INFINITY;
+                for (double[] curve : curves)
+                {
+                    min = Math.min(min, curve[j]);
+                    max = Math.max(max, curve[j]);
+                }
+                System.out.printf("\t\t\t%.1f%%: Recent Average Score: %.2f "
+                    + "(min %.2f, max %.2f)\n",
+                    100.0 * (j + 1) * displayEvery / numEpisodes, mean[j],
+                    min, max);
+            }
+            for (int i = 0; i < curves.length; i++)
+            {
+                System.out.printf("%s: %.2f\n", trials.get(i),
+                    curves[i][numPoints - 1]);
+            }
+        }
+    }
+
+    /**
+     * Sweeps world and learner seeds on 10x10 worlds like the one Game.main
+     * plays, using every core. Each trial's MDP gets a seed of its own, so
+     * the trials on a world see different moves as well as different ties.
+     *
+     * @param args
+     *            optional number of world seeds, learner seeds, and episodes
+     *            per trial.
+     */
+    public static void main(String[] args)
+    {
+        int numWorlds = (args.length > 0) ? Integer.parseInt(args[0]) : 8;
+        int numLearners = (args.length > 1) ? Integer.parseInt(args[1]) : 4;
+        int numEpisodes = (args.length > 2) ? Integer.parseInt(args[2])
+            : 100000;
+        final int DISPLAY_EVERY = 1000;
+
+        List<Trial> trials = new ArrayList<Trial>();
+        for (long world = 1; world <= numWorlds; world++)
+        {
+            for (long learner = 1; learner <= numLearners; learner++)
+            {
+                // negative, so no MDP seed equals a learner seed
+                long mdp = (world - 1) * numLearners + learner;
+                trials.add(new Trial(10, 10, 0, 2, 10, 1, 1.0, world,
+                    -mdp, learner, 100.0));
+            }
+        }
+        ExperimentRunner runner = new ExperimentRunner(numEpisodes,
+            DISPLAY_EVERY, ForkJoinPool.commonPool());
+        long start = System.nanoTime();
+        Report report = runner.run(trials);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        report.display();
+        System.out.printf("%d trials in %.1f s on %d threads\n",
+            trials.size(), seconds, ForkJoinPool.commonPool().getParallelism());
+    }
+}
@@ -1,6 +1,11 @@
 package util;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.Scanner;
+import java.util.concurrent.ThreadLocalRandom;
 
 import skeleton.MyQLearner;
 
@@ -13,8 +18,12 @@ import skeleton.MyQLearner;
  */
 public class Game
 {
+    // time one episode in SAMPLE_EVERY and scale up, to keep timing cheap
+    private static final int SAMPLE_EVERY = 128;
     private MarkovDecisionProcess mdp;
     private Player player;
+    private Metrics metrics;
+    private int steps;
 
     /**
      * Constructor initializes the MDP and player.
@@ -25,80 +34,233 @@ public class Game
      *            the player
      */
     public Game(MarkovDecisionProcess mdp, Player player)
+    {
+        this(mdp, player, null);
+    }
+
+    /**
+     * Constructor initializes the MDP and player, and a metrics registry to
+     * record each episode into.
+     * 
+     * @param mdp
+     *            the MDP
+     * @param player
+     *            the player
+     * @param metrics
+     *            the registry, or null to record nothing
+     */
+    public Game(MarkovDecisionProcess mdp, Player player, Metrics metrics)
     {
         this.mdp = mdp;
         this.player = player;
+        this.metrics = metrics;
     }
 
     /**
      * Plays the game by repeatedly querying the player for an action until it
-     * reaches a terminal state, accumulating points along the way.
+     * reaches a terminal state, accumulating points along the way. The
+     * player is shown the same percept at every step, moved to the current
+     * state, so it must not keep the percept or its grid cells between
+     * steps.
+     * 
+     * With a metrics registry, the episode, its length and an estimate of
+     * the time spent in the player and in the MDP, from timing a random one
+     * in SAMPLE_EVERY episodes, are recorded at the end. Each episode is
+     * also a JFR EpisodeEvent when a flight recording enables it.
      * 
      * @return the final score for the game.
      */
     public double play()
     {
-        GridCell current = mdp.getCurrent();
-        double score = current.reward();
+        EpisodeEvent event = new EpisodeEvent();
+        event.begin();
+        ActionSpace actions = mdp.getActionSpace();
+        Percept percept = new Percept(mdp);
+        int start = mdp.getCurrentIndex();
+        int current = start;
+        double score = mdp.reward(current);
+        boolean timed = metrics != null
+            && ThreadLocalRandom.current().nextInt(SAMPLE_EVERY) == 0;
+        long playNanos = 0;
+        long takeActionNanos = 0;
         int t = 1;
         while (true)
         {
-            String action = player.play(new Percept(mdp, current, score));
-            if (mdp.getCurrent().isTerminal())
+            percept.moveTo(current, score);
+            int action;
+            if (timed)
+            {
+                long before = System.nanoTime();
+                action = player.playAction(percept);
+                playNanos += System.nanoTime() - before;
+            }
+            else
+            {
+                action = player.playAction(percept);
+            }
+            if (mdp.isTerminal(current))
             {
                 break;
             }
-            if (!mdp.getActions().contains(action))
+            if (!actions.contains(action))
             {
                 continue;
             }
-            mdp.takeAction(action);
-            current = mdp.getCurrent();
-            score += Math.pow(mdp.getGamma(), t) * current.reward();
+            if (timed)
+            {
+                long before = System.nanoTime();
+                mdp.takeAction(action);
+                takeActionNanos += System.nanoTime() - before;
+            }
+            else
+            {
+                mdp.takeAction(action);
+            }
+            current = mdp.getCurrentIndex();
+            score += mdp.discount(t) * mdp.reward(current);
             t++;
         }
+        steps = t - 1;
+        if (metrics != null)
+        {
+            metrics.recordEpisode(steps, SAMPLE_EVERY * playNanos,
+                SAMPLE_EVERY * takeActionNanos);
+        }
+        if (event.shouldCommit())
+        {
+            event.steps = steps;
+            event.score = score;
+            event.start = start;
+            event.commit();
+        }
         return score;
     }
 
+    /**
+     * @return the number of moves in the last game played.
+     */
+    public int getSteps()
+    {
+        return steps;
+    }
+
     /**
      * This is the main game program with a human player. Run this to try out a
      * random GridWorld game.
      * 
      * @param args
-     *            not used.
+     *            optional checkpoint file. If it exists, the learner starts
+     *            from it, and it is saved in the background as training goes
+     *            on and at the end. With -stop, training stops early once
+     *            the Q values stop changing; with -metrics, training metrics
+     *            are reported to standard error as training goes on.
+     *            Otherwise all NUM_TRIALS episodes are played.
+     * @throws IOException
+     *             if the checkpoint cannot be read or written.
      */
-    public static void main(String[] args)
+    public static void main(String[] args) throws IOException
     {
         final int NUM_TRIALS = 1000000;
         //final int NUM_TRIALS = 1000;
     	final int DISPLAY_EVERY = 1000;
         //final int DISPLAY_EVERY = 100;
+        final int CHECKPOINT_EVERY = 100000;
+        final int REPORT_MILLIS = 5000;
+        // stop once no Q value moves by more than Q_EPSILON between checks
+        // for STABLE_CHECKS checks in a row.
+        final int CHECK_EVERY = 1000;
+        final double Q_EPSILON = 0.05;
+        final int STABLE_CHECKS = 10;
         String world =
             GridWorld.createRandomGridWorld(10, 10, 0, 2, 10, 1, 1.0, 1L);
         MarkovDecisionProcess mdp =
             new MarkovDecisionProcess(new Scanner(world), 1L);
 
         GridWorld.display(mdp, null);
-        GridCell start = mdp.getCurrent();
         
         double Ne = 100.0;
         double Rplus = 0.0;
         QLearner player = new MyQLearner("Q-Learner");
         // Player player = new HumanPlayer("Human");
+        Path checkpoint = null;
+        boolean stopEarly = false;
+        boolean report = false;
+        for (String arg : args)
+        {
+            if (arg.equals("-stop"))
+            {
+                stopEarly = true;
+            }
+            else if (arg.equals("-metrics"))
+            {
+                report = true;
+            }
+            else
+            {
+                checkpoint = Paths.get(arg);
+            }
+        }
+        CheckpointWriter checkpoints = null;
+        if (checkpoint != null)
+        {
+            if (Files.exists(checkpoint))
+            {
+                Checkpoint.read(checkpoint).restore(player);
+            }
+            checkpoints = new CheckpointWriter(checkpoint);
+        }
+        Metrics metrics = null;
+        MetricsReporter reporter = null;
+        if (report)
+        {
+            metrics = new Metrics();
+            mdp.setMetrics(metrics);
+            player.setMetrics(metrics);
+            reporter = new MetricsReporter(metrics, System.err,
+                REPORT_MILLIS);
+        }
+
+        EpisodeDriver driver = new EpisodeDriver(mdp, player, NUM_TRIALS,
+            CHECK_EVERY);
+        driver.setMetrics(metrics);
+        if (stopEarly)
+        {
+            driver.addCriterion(new EpisodeDriver.MaxQDelta(Q_EPSILON,
+                STABLE_CHECKS));
+        }
 
         double score = 0.0;
-        for (int i = 1; i <= NUM_TRIALS; i++)
+        for (int i = 1; !driver.isDone(); i++)
         {
         	//System.out.printf("Playing Game: %d\n", i);
-            mdp.setCurrent(start);
-            Game game = new Game(mdp, player);
-            score += (game.play() - score) / i;
+            score += (driver.playEpisode() - score) / i;
             if (i % DISPLAY_EVERY == 0)
             {
                 // player.displayStatMaps(mdp);
                 System.out.printf("\t\t\t%.1f%%: Recent Average Score: %.2f\n",
                     100.0 * i / NUM_TRIALS, score);
             }
+            if (checkpoints != null
+                && (i % CHECKPOINT_EVERY == 0 || driver.isDone()))
+            {
+                checkpoints.save(player);
+            }
+        }
+        if (driver.isConverged())
+        {
+            System.out.printf("Converged after %d episodes\n",
+                driver.getEpisodes());
+        }
+        if (checkpoints != null)
+        {
+            checkpoints.close();
+        }
+        if (report)
+        {
+            metrics.flush();
+            mdp.flushMetrics();
+            player.flushMetrics();
+            reporter.close();
         }
         player.displayStats(mdp);
     }
@@ -1,7 +1,10 @@
 package util;
 
 /**
- * Represents a state in the MDP.
+ * Represents a state in the MDP. An MDP keeps its states by column, and makes
+ * grid cells only as they are asked for, e.g., for display. Those are frozen,
+ * so that they can be shared rather than copied; clone() returns a copy that
+ * can be modified.
  * 
  * @author Mitch Parry
  * @version 2014-03-28
@@ -9,10 +12,16 @@ package util;
  */
 public class GridCell implements Cloneable
 {
+    // the types of cell, by reward
+    public static final byte OTHER = 0;
+    public static final byte GOAL = 1;
+    public static final byte HOLE = 2;
+    public static final byte NORMAL = 3;
     private double reward;
     private String name;
     private boolean terminal;
     private boolean start;
+    private boolean frozen;
 
     /**
      * Constructor takes a name and a reward.
@@ -46,27 +55,56 @@ public class GridCell implements Cloneable
 
     /**
      * Sets this state to be a terminal state.
+     * 
+     * @throws IllegalStateException
+     *             if the state is frozen.
      */
     public void setTerminal()
     {
+        requireNotFrozen();
         terminal = true;
     }
 
     /**
      * Sets this state to be the start state.
+     * 
+     * @throws IllegalStateException
+     *             if the state is frozen.
      */
     public void setStart()
     {
+        requireNotFrozen();
         start = true;
     }
 
+    /**
+     * Makes this state immutable, e.g., once an MDP has loaded it.
+     */
+    void freeze()
+    {
+        frozen = true;
+    }
+
+    /**
+     * Helper method throws an exception if the state is frozen.
+     */
+    private void requireNotFrozen()
+    {
+        if (frozen)
+        {
+            throw new IllegalStateException("Grid cell " + name
+                + " is shared and cannot be modified");
+        }
+    }
+
     @Override
     protected Object clone()
     {
-        // TODO Auto-generated method stub
         try
         {
-            return super.clone();
+            GridCell copy = (GridCell) super.clone();
+            copy.frozen = false;
+            return copy;
         }
         catch (CloneNotSupportedException e)
         {
@@ -135,6 +173,38 @@ public class GridCell implements Cloneable
         return true;
     }
 
+    /**
+     * Finds the type of a cell by its reward.
+     * 
+     * @param reward
+     *            the reward.
+     * @return GOAL, HOLE, NORMAL or OTHER.
+     */
+    public static byte typeOf(double reward)
+    {
+        if (reward == GridWorld.R_GOAL)
+        {
+            return GOAL;
+        }
+        else if (reward == GridWorld.R_HOLE)
+        {
+            return HOLE;
+        }
+        else if (reward == GridWorld.R_CELL)
+        {
+            return NORMAL;
+        }
+        return OTHER;
+    }
+
+    /**
+     * @return the type of this cell, GOAL, HOLE, NORMAL or OTHER.
+     */
+    public byte type()
+    {
+        return typeOf(reward);
+    }
+
     /**
      * @return is this cell is a goal?
      */
@@ -1,10 +1,8 @@
 package util;
-import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
+import java.io.IOException;
 import java.util.Random;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 /**
  * GridWorld class represents the game's grid world. It uses the state names of
@@ -19,347 +17,199 @@ public class GridWorld
     public static final int R_GOAL = 100;
     public static final int R_HOLE = -100;
     public static final int R_CELL = -3;
-    private static int[][][] board;
-    private static ArrayList<int[]> cells;
-    private static ArrayList<int[]> openCells;
-    private static ArrayList<int[]> goalCells;
-    private static ArrayList<int[]> rockCells;
-    private static ArrayList<int[]> tunnelCells;
-    private static ArrayList<int[]> holeCells;
-    private static ArrayList<int[]> startCells;
+    private static final int NUM_LETTERS = 26;
+    // longest name: 7 letters for any int row, a sign and 10 digits
+    private static final int MAX_NAME = 18;
     private static Random rand = new Random();
-    private static double[] directionUncertainty;
-    private static char[] dir = {
-        'N', 'E', 'S', 'W'
-    };
     private static int w = 7;
 
     /**
-     * Place types of cells in the grid.
+     * Creates a random Grid World with the start state in the southwest corner
+     * and at least one goal state in the northeast corner. Successive calls
+     * without a seed continue the same random sequence.
      * 
-     * @param rand
-     *            the random number generator.
-     * @param numGoals
-     *            the number of goals.
+     * @param numRows
+     *            the number of rows in the grid world.
+     * @param numCols
+     *            the number of columnss in the grid world.
      * @param numRocks
-     *            the number of rocks.
+     *            the number of rocks in the grid world.
      * @param numTunnels
-     *            the number of tunnels.
+     *            the number of tunnels in the grid world.
      * @param numHoles
-     *            the number of holes.
+     *            the number of holes in the grid world.
+     * @param numGoals
+     *            the number of goals in the grid world.
+     * @param gamma
+     *            the discount factor for each move.
+     * @param seed
+     *            the random seed
+     * @return the string representation of the grid world to be read by the MDP
+     *         constructor.
+     * @see GridWorldBuilder
      */
-    private static void mapLayout(Random rand, int numGoals, int numRocks,
-        int numTunnels, int numHoles)
+    public static synchronized String createRandomGridWorld(int numRows,
+        int numCols, int numRocks, int numTunnels, int numHoles, int numGoals,
+        double gamma, Long seed)
     {
-        int numRows = board.length;
-        int numCols = board[0].length;
-        openCells = new ArrayList<int[]>(cells);
-
-        // pick start cell (always southwest corner).
-        startCells = new ArrayList<int[]>(1);
-        startCells.add(board[numRows - 1][0]);
-        openCells.remove(board[numRows - 1][0]);
-        // pick goal cells
-        // +100 always northeast corner.
-        goalCells = new ArrayList<int[]>(numGoals);
-        goalCells.add(board[0][numCols - 1]);
-        openCells.remove(board[0][numCols - 1]);
-        for (int i = 1; i < numGoals; i++)
-        {
-            goalCells.add(openCells.remove(rand.nextInt(openCells.size())));
-        }
-        // pick rocks
-        rockCells = new ArrayList<int[]>(numRocks);
-        for (int i = 0; i < numRocks; i++)
-        {
-            rockCells.add(openCells.remove(rand.nextInt(openCells.size())));
-        }
-        // pick tunnels
-        tunnelCells = new ArrayList<int[]>(numTunnels);
-        for (int i = 0; i < numTunnels; i++)
-        {
-            tunnelCells.add(openCells.remove(rand.nextInt(openCells.size())));
-        }
-        // pick holes
-        holeCells = new ArrayList<int[]>(numHoles);
-        for (int i = 0; i < numHoles; i++)
+        if (seed != null)
         {
-            holeCells.add(openCells.remove(rand.nextInt(openCells.size())));
+            rand.setSeed(seed);
         }
-
+        GridWorldBuilder builder = new GridWorldBuilder(rand);
+        String output = builder.createRandomGridWorld(numRows, numCols,
+            numRocks, numTunnels, numHoles, numGoals, gamma);
+        double[] directionUncertainty = builder.getDirectionUncertainty();
+        System.out.println(directionUncertainty[0]);
+        System.out.println(directionUncertainty[1]);
+        return output;
     }
 
     /**
-     * Helper method to create the cells in the board.
+     * Helper method finds where the row letters of a name start: the first
+     * run of letters that is followed by a digit.
      * 
-     * @param numRows
-     *            the number of rows.
-     * @param numCols
-     *            the number of columns.
+     * @param name
+     *            the name of the state
+     * @return the index of the first row letter.
+     * @throws IllegalStateException
+     *             if the name has no letters followed by a digit, as the
+     *             regular expression it replaced did.
      */
-    private static void createCells(int numRows, int numCols)
+    private static int rowStart(String name)
     {
-        board = new int[numRows][numCols][];
-        cells = new ArrayList<int[]>(numRows * numCols);
-        for (int i = 0; i < numRows; i++)
+        int n = name.length();
+        int i = 0;
+        while (i < n)
         {
-            for (int j = 0; j < numCols; j++)
+            while (i < n && !isLetter(name.charAt(i)))
             {
-                int[] cell = {
-                    i, j
-                };
-                cells.add(cell);
-                board[i][j] = cell;
+                i++;
+            }
+            int start = i;
+            while (i < n && isLetter(name.charAt(i)))
+            {
+                i++;
+            }
+            if (i > start && i < n && isDigit(name.charAt(i)))
+            {
+                return start;
             }
         }
+        throw new IllegalStateException("Not a state name: " + name);
     }
 
     /**
-     * Pick action uncertainty (same shape for every direction).
+     * @param c
+     *            a character.
+     * @return true if it is a lower case letter.
      */
-    private static void sampleUncertainty()
+    private static boolean isLetter(char c)
     {
-        directionUncertainty = new double[4];
-        directionUncertainty[0] = (6.0 / 10.0) + (rand.nextDouble() * (4.0 / 10.0));
-        directionUncertainty[1] = (1.0 - directionUncertainty[0]) / 2.0;
-        directionUncertainty[3] = (1.0 - directionUncertainty[0]) / 2.0;
-        directionUncertainty[2] = 0.0;
-        System.out.println(directionUncertainty[0]);
-        System.out.println(directionUncertainty[1]);
-
+        return c >= 'a' && c <= 'z';
     }
 
     /**
-     * @return the string representation of the states.
+     * @param c
+     *            a character.
+     * @return true if it is a digit.
      */
-    private static String statesToString()
+    private static boolean isDigit(char c)
     {
-        // write states
-        String s = cells.size() - tunnelCells.size() - rockCells.size() + "\n";
-        for (int[] cell : cells)
-        {
-            if (!rockCells.contains(cell) && !tunnelCells.contains(cell))
-            {
-                if (openCells.contains(cell) || startCells.contains(cell))
-                {
-                    s += cellName(cell) + " " + R_CELL + "\n";
-                }
-                else if (holeCells.contains(cell))
-                {
-                    s += cellName(cell) + " " + R_HOLE + "\n";
-                }
-                else if (goalCells.contains(cell))
-                {
-                    s += cellName(cell) + " " + R_GOAL + "\n";
-                }
-            }
-        }
-        // write goal states
-        for (int[] cell : holeCells)
-        {
-            s += cellName(cell) + " ";
-        }
-        for (int[] cell : goalCells)
-        {
-            s += cellName(cell) + " ";
-        }
-        return s + "\n";
+        return c >= '0' && c <= '9';
     }
 
     /**
-     * @return a string representation of the direction uncertainty.
+     * Extracts the row index from the name of the state.
+     * 
+     * @param name
+     *            the name of the state
+     * @return the row index of the grid location for the state.
      */
-    private static String uncertaintyToString()
+    public static int nameToRow(String name)
     {
-        // write action uncertainty
-        String output = dir.length + "\n";
-        for (int k = 0; k < dir.length; k++)
+        int row = 0;
+        for (int i = rowStart(name); isLetter(name.charAt(i)); i++)
         {
-            output += dir[k] + " ";
-            int j = (dir.length - k) % dir.length;
-            for (int i = 0; i < directionUncertainty.length; i++)
-            {
-                output += directionUncertainty[j] + " ";
-                j = (j + 1) % directionUncertainty.length;
-            }
-            output += "\n";
+            row = NUM_LETTERS * row + (name.charAt(i) - 'a');
         }
-        return output;
+        return row;
     }
 
     /**
-     * Return a string representation of this path.
+     * Extracts the column index from the name of the state.
      * 
-     * @param i
-     *            row index
-     * @param j
-     *            column index
-     * @param k
-     *            action (direction) index
-     * @param cell
-     *            the cell
-     * @return a string representation of this path.
+     * @param name
+     *            the name of the state
+     * @return the column index of the grid location for the state.
      */
-    private static String pathToString(int i, int j, int k, int[] cell)
+    public static int nameToCol(String name)
     {
-        int[] adjCell = getAdjacentCell(i, j, board, dir[k]);
-        String output = cellName(cell) + " " + dir[k] + " ";
-        if (adjCell == null || rockCells.contains(adjCell))
+        int i = rowStart(name);
+        while (isLetter(name.charAt(i)))
         {
-            output += cellName(cell);
+            i++;
         }
-        else if (tunnelCells.contains(adjCell))
+        int n = name.length();
+        int col = 0;
+        for (; i < n && isDigit(name.charAt(i)); i++)
         {
-            int index = tunnelCells.indexOf(adjCell);
-            int[] exit = tunnelCells.get((index + 1) % tunnelCells.size());
-            int[] outCell = getAdjacentCell(exit[0], exit[1], board, dir[k]);
-            if (outCell != null && !tunnelCells.contains(outCell)
-                && !rockCells.contains(outCell))
-            {
-                output += cellName(outCell);
-            }
-            else
+            int digit = name.charAt(i) - '0';
+            if (col > (Integer.MAX_VALUE - digit) / 10)
             {
-                output += cellName(cell);
+                throw new NumberFormatException("Column too large: " + name);
             }
+            col = 10 * col + digit;
         }
-        else if (holeCells.contains(adjCell) || goalCells.contains(adjCell)
-            || openCells.contains(adjCell) || startCells.contains(adjCell))
-        {
-            output += cellName(adjCell);
-        }
-        return output + "\n";
+        return col - 1;
     }
 
     /**
-     * @return a string representation of the paths.
+     * Extracts the packed row and column indices from the name of the state.
+     * 
+     * @param name
+     *            the name of the state
+     * @return the packed grid location of the state.
+     * @see #packRowCol(int, int)
      */
-    private static String pathsToString()
+    public static int nameToRowCol(String name)
     {
-        String output =
-            (openCells.size() + startCells.size()) * dir.length + "\n";
-        for (int i = 0; i < board.length; i++)
-        {
-            for (int j = 0; j < board[i].length; j++)
-            {
-                int[] cell = board[i][j];
-                if (openCells.contains(cell) || startCells.contains(cell))
-                {
-                    for (int k = 0; k < dir.length; k++)
-                    {
-                        output += pathToString(i, j, k, cell);
-                    }
-                }
-            }
-        }
-        return output;
-
+        return packRowCol(nameToRow(name), nameToCol(name));
     }
 
     /**
-     * Creates a random Grid World with the start state in the southwest corner
-     * and at least one goal state in the northeast corner.
+     * Packs a grid location into an int, 16 bits for the row index and 16
+     * bits for the column index.
      * 
-     * @param numRows
-     *            the number of rows in the grid world.
-     * @param numCols
-     *            the number of columnss in the grid world.
-     * @param numRocks
-     *            the number of rocks in the grid world.
-     * @param numTunnels
-     *            the number of tunnels in the grid world.
-     * @param numHoles
-     *            the number of holes in the grid world.
-     * @param numGoals
-     *            the number of goals in the grid world.
-     * @param gamma
-     *            the discount factor for each move.
-     * @param seed
-     *            the random seed
-     * @return the string representation of the grid world to be read by the MDP
-     *         constructor.
+     * @param row
+     *            the row index, 0 to 65535.
+     * @param col
+     *            the column index, 0 to 65535.
+     * @return the packed grid location.
      */
-    public static String createRandomGridWorld(int numRows, int numCols,
-        int numRocks, int numTunnels, int numHoles, int numGoals, double gamma,
-        Long seed)
+    public static int packRowCol(int row, int col)
     {
-
-        // check parameters.
-        int numCells = numRows * numCols;
-        if (numRocks + numTunnels + numHoles + numGoals >= numCells)
-        {
-            throw new IllegalArgumentException("Combined number of rocks, "
-                + "tunnels, holes, and goals must be less than number of grid "
-                + "locations.");
-        }
-
-        if (seed != null)
-        {
-            rand.setSeed(seed);
-        }
-
-        // create cells
-        createCells(numRows, numCols);
-
-        // Pick types of cells
-        mapLayout(rand, numGoals, numRocks, numTunnels, numHoles);
-
-        // pick action uncertainty (same shape for every direction)
-        sampleUncertainty();
-
-        // write states
-        String output = statesToString();
-
-        // write action uncertainty
-        output += uncertaintyToString();
-
-        // write paths
-        output += pathsToString();
-        // write gamma
-        output += gamma + "\n";
-        // write start state
-        output += cellName(startCells.get(0));
-        return output;
+        return (row << 16) | (col & 0xFFFF);
     }
 
     /**
-     * Extracts the row index from the name of the state.
-     * 
-     * @param name
-     *            the name of the state
-     * @return the row index of the grid location for the state.
+     * @param rowCol
+     *            a packed grid location.
+     * @return its row index.
      */
-    public static int nameToRow(String name)
+    public static int unpackRow(int rowCol)
     {
-        final int NUM_LETTERS = 26;
-        Pattern p = Pattern.compile("([a-z]+)[0-9]+");
-        Matcher m = p.matcher(name);
-        m.find();
-        String rowString = m.group(1);
-        int row = 0;
-        int nchars = rowString.length();
-        int mult = 1;
-        for (int i = nchars - 1; i >= 0; i--)
-        {
-            row += (rowString.charAt(i) - 'a') * mult;
-            mult *= NUM_LETTERS;
-        }
-        return row;
+        return rowCol >>> 16;
     }
 
     /**
-     * Extracts the column index from the name of the state.
-     * 
-     * @param name
-     *            the name of the state
-     * @return the column index of the grid location for the state.
+     * @param rowCol
+     *            a packed grid location.
+     * @return its column index.
      */
-    public static int nameToCol(String name)
+    public static int unpackCol(int rowCol)
     {
-        Pattern p = Pattern.compile("[a-z]+([0-9]+)");
-        Matcher m = p.matcher(name);
-        m.find();
-        return Integer.parseInt(m.group(1)) - 1;
+        return rowCol & 0xFFFF;
     }
 
     /**
@@ -373,66 +223,108 @@ public class GridWorld
      */
     public static String rowColToName(int row, int col)
     {
-        final int NUM_LETTERS = 26;
-        String rowString = "";
+        char[] name = new char[MAX_NAME];
+        int start = writeName(name, row, col);
+        return new String(name, start, MAX_NAME - start);
+    }
 
+    /**
+     * Checks whether a state name is the one rowColToName gives its grid
+     * location, without constructing that name.
+     * 
+     * @param name
+     *            the name of the state.
+     * @param row
+     *            the row index.
+     * @param col
+     *            the column index.
+     * @return true if the name is rowColToName(row, col).
+     */
+    static boolean isName(String name, int row, int col)
+    {
+        // compare from the last character, in the order writeName writes
+        int i = name.length();
+        int number = col + 1;
+        long digits = Math.abs((long) number);
         do
         {
-            rowString = (char) ('a' + (row % NUM_LETTERS)) + rowString;
+            if (i == 0 || name.charAt(--i) != (char) ('0' + digits % 10))
+            {
+                return false;
+            }
+            digits /= 10;
+        } while (digits > 0);
+        if (number < 0 && (i == 0 || name.charAt(--i) != '-'))
+        {
+            return false;
+        }
+        do
+        {
+            if (i == 0
+                || name.charAt(--i) != (char) ('a' + (row % NUM_LETTERS)))
+            {
+                return false;
+            }
             row /= NUM_LETTERS;
         } while (row > 0);
-        String colString = Integer.toString(col + 1);
-        return rowString + colString;
+        return i == 0;
     }
 
     /**
-     * Constructs the name of the state from its grid location.
+     * Writes the state name for a grid index.
      * 
-     * @param cell
-     *            the coordinates of the grid location
-     * @return the name of the state.
+     * @param out
+     *            where to write.
+     * @param row
+     *            the row index of the state.
+     * @param col
+     *            the column index of the state
+     * @throws IOException
+     *             if the output cannot be written.
      */
-    private static String cellName(int[] cell)
+    public static void appendName(Appendable out, int row, int col)
+        throws IOException
     {
-        return rowColToName(cell[0], cell[1]);
+        char[] name = new char[MAX_NAME];
+        for (int i = writeName(name, row, col); i < MAX_NAME; i++)
+        {
+            out.append(name[i]);
+        }
     }
 
     /**
-     * Returns the adjacent cell location in the GridWorld.
+     * Helper method writes a state name right-aligned in a buffer.
      * 
-     * @param i
-     *            the row index.
-     * @param j
-     *            the column index.
-     * @param board
-     *            the board of cells.
-     * @param direction
-     *            the direction (N, E, S, or W)
-     * @return the cell location adjacent.
+     * @param name
+     *            the buffer, MAX_NAME characters long.
+     * @param row
+     *            the row index of the state.
+     * @param col
+     *            the column index of the state
+     * @return the position of the first character of the name.
      */
-    private static int[] getAdjacentCell(int i, int j, int[][][] board,
-        char direction)
+    private static int writeName(char[] name, int row, int col)
     {
-        int numRows = board.length;
-        int numCols = board[0].length;
-        int[] adjacentCell = null;
-        if (direction == 'N' && i > 0)
-        {
-            adjacentCell = board[i - 1][j];
-        }
-        else if (direction == 'E' && j < numCols - 1)
+        int i = MAX_NAME;
+        // col + 1 wraps like Integer.toString(col + 1)
+        int number = col + 1;
+        boolean negative = number < 0;
+        long digits = Math.abs((long) number);
+        do
         {
-            adjacentCell = board[i][j + 1];
-        }
-        else if (direction == 'S' && i < numRows - 1)
+            name[--i] = (char) ('0' + digits % 10);
+            digits /= 10;
+        } while (digits > 0);
+        if (negative)
         {
-            adjacentCell = board[i + 1][j];
+            name[--i] = '-';
         }
-        else if (direction == 'W' && j > 0)
+        do
         {
-            adjacentCell = board[i][j - 1];
-        }
-        return adjacentCell;
+            name[--i] = (char) ('a' + (row % NUM_LETTERS));
+            row /= NUM_LETTERS;
+        } while (row > 0);
+        return i;
     }
 
     /**
@@ -449,52 +341,6 @@ public class GridWorld
         display(neighborhood, current, (HashMap<GridCell, String>) null);
     }
 
-    /**
-     * Helper method to get the number of rows in the Grid World described by
-     * these states. Uses the label of each state (a1...aN,b1...bN,...,z1...zN)
-     * to find numRows
-     * 
-     * @param states
-     *            the states.
-     * @return the number of rows of the grid world represented.
-     */
-    private static int getRows(List<GridCell> states)
-    {
-        int numRows = 0;
-        for (GridCell s : states)
-        {
-            int row = nameToRow(s.name());
-            if (row + 1 > numRows)
-            {
-                numRows = row + 1;
-            }
-        }
-        return numRows;
-    }
-
-    /**
-     * Helper method to get the number of columns in the Grid World described by
-     * these states. Uses the label of each state (a1...aN,b1...bN,...,z1...zN)
-     * to find numCols
-     * 
-     * @param states
-     *            the states.
-     * @return the number of columns of the grid world represented.
-     */
-    private static int getCols(List<GridCell> states)
-    {
-        int numCols = 0;
-        for (GridCell s : states)
-        {
-            int col = nameToCol(s.name());
-            if (col + 1 > numCols)
-            {
-                numCols = col + 1;
-            }
-        }
-        return numCols;
-    }
-
     /**
      * Helper method generates string representation for this state.
      * 
@@ -625,8 +471,8 @@ public class GridWorld
         List<GridCell> states = mdp.getStates();
         GridCell current = mdp.getCurrent();
         String str = "";
-        int numRows = getRows(states);
-        int numCols = getCols(states);
+        int numRows = mdp.getNumRows();
+        int numCols = mdp.getNumCols();
         str += dashes(numCols);
 
         for (int i = 0; i < numRows; i++)
@@ -634,7 +480,7 @@ public class GridWorld
             str += "|";
             for (int j = 0; j < numCols; j++)
             {
-                int index = states.indexOf(new GridCell(rowColToName(i, j), 0));
+                int index = mdp.indexOf(i, j);
                 GridCell s = (index >= 0) ? states.get(index) : null;
                 str += stateToString(s, current, labels);
             }
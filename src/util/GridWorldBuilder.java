@@ -0,0 +1,556 @@
+package util;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * Generates random grid worlds in the text format read by the MDP
+ * constructor. All of the generation state is held by the instance, so
+ * separate builders can generate worlds on separate threads. The world is
+ * streamed to an Appendable in time linear in the number of cells.
+ *
+ * @author agent
+ * @version 2026-10-17
+ *
+ */
+public class GridWorldBuilder
+{
+    private static final char[] DIR = {
+        'N', 'E', 'S', 'W'
+    };
+    private static final byte OPEN = 0;
+    private static final byte START = 1;
+    private static final byte GOAL = 2;
+    private static final byte ROCK = 3;
+    private static final byte TUNNEL = 4;
+    private static final byte HOLE = 5;
+    private Random rand;
+    private int[][][] board;
+    private ArrayList<int[]> cells;
+    private ArrayList<int[]> openCells;
+    private ArrayList<int[]> goalCells;
+    private ArrayList<int[]> rockCells;
+    private ArrayList<int[]> tunnelCells;
+    private ArrayList<int[]> holeCells;
+    private ArrayList<int[]> startCells;
+    private double[] directionUncertainty;
+    // the type of each cell, and the position of each tunnel in tunnelCells
+    private byte[][] types;
+    private int[][] tunnelIndex;
+
+    /**
+     * Constructor takes the random number generator.
+     *
+     * @param rand
+     *            the random number generator.
+     */
+    public GridWorldBuilder(Random rand)
+    {
+        this.rand = rand;
+    }
+
+    /**
+     * Constructor seeds a new random number generator.
+     *
+     * @param seed
+     *            the random seed.
+     */
+    public GridWorldBuilder(long seed)
+    {
+        this(new Random(seed));
+    }
+
+    /**
+     * Place types of cells in the grid.
+     * 
+     * @param numGoals
+     *            the number of goals.
+     * @param numRocks
+     *            the number of rocks.
+     * @param numTunnels
+     *            the number of tunnels.
+     * @param numHoles
+     *            the number of holes.
+     */
+    private void mapLayout(int numGoals, int numRocks, int numTunnels,
+        int numHoles)
+    {
+        int numRows = board.length;
+        int numCols = board[0].length;
+        openCells = new ArrayList<int[]>(cells);
+
+        // pick start cell (always southwest corner).
+        startCells = new ArrayList<int[]>(1);
+        startCells.add(board[numRows - 1][0]);
+        openCells.remove(board[numRows - 1][0]);
+        // pick goal cells
+        // +100 always northeast corner.
+        goalCells = new ArrayList<int[]>(numGoals);
+        goalCells.add(board[0][numCols - 1]);
+        openCells.remove(board[0][numCols - 1]);
+        for (int i = 1; i < numGoals; i++)
+        {
+            goalCells.add(openCells.remove(rand.nextInt(openCells.size())));
+        }
+        // pick rocks
+        rockCells = new ArrayList<int[]>(numRocks);
+        for (int i = 0; i < numRocks; i++)
+        {
+            rockCells.add(openCells.remove(rand.nextInt(openCells.size())));
+        }
+        // pick tunnels
+        tunnelCells = new ArrayList<int[]>(numTunnels);
+        for (int i = 0; i < numTunnels; i++)
+        {
+            tunnelCells.add(openCells.remove(rand.nextInt(openCells.size())));
+        }
+        // pick holes
+        holeCells = new ArrayList<int[]>(numHoles);
+        for (int i = 0; i < numHoles; i++)
+        {
+            holeCells.add(openCells.remove(rand.nextInt(openCells.size())));
+        }
+
+    }
+
+    /**
+     * Helper method to create the cells in the board.
+     * 
+     * @param numRows
+     *            the number of rows.
+     * @param numCols
+     *            the number of columns.
+     */
+    private void createCells(int numRows, int numCols)
+    {
+        board = new int[numRows][numCols][];
+        cells = new ArrayList<int[]>(numRows * numCols);
+        for (int i = 0; i < numRows; i++)
+        {
+            for (int j = 0; j < numCols; j++)
+            {
+                int[] cell = {
+                    i, j
+                };
+                cells.add(cell);
+                board[i][j] = cell;
+            }
+        }
+    }
+
+    /**
+     * Pick action uncertainty (same shape for every direction).
+     */
+    private void sampleUncertainty()
+    {
+        directionUncertainty = new double[4];
+        directionUncertainty[0] = (6.0 / 10.0) + (rand.nextDouble() * (4.0 / 10.0));
+        directionUncertainty[1] = (1.0 - directionUncertainty[0]) / 2.0;
+        directionUncertainty[3] = (1.0 - directionUncertainty[0]) / 2.0;
+        directionUncertainty[2] = 0.0;
+    }
+
+    /**
+     * Helper method records the type of each cell in the board, and the
+     * position of each tunnel in the list of tunnels.
+     */
+    private void markTypes()
+    {
+        int numRows = board.length;
+        int numCols = board[0].length;
+        types = new byte[numRows][numCols];
+        tunnelIndex = new int[numRows][numCols];
+        markType(startCells, START);
+        markType(goalCells, GOAL);
+        markType(rockCells, ROCK);
+        markType(tunnelCells, TUNNEL);
+        markType(holeCells, HOLE);
+        for (int t = 0; t < tunnelCells.size(); t++)
+        {
+            int[] cell = tunnelCells.get(t);
+            tunnelIndex[cell[0]][cell[1]] = t;
+        }
+    }
+
+    /**
+     * Helper method records the type of a list of cells.
+     * 
+     * @param list
+     *            the cells.
+     * @param type
+     *            their type.
+     */
+    private void markType(ArrayList<int[]> list, byte type)
+    {
+        for (int[] cell : list)
+        {
+            types[cell[0]][cell[1]] = type;
+        }
+    }
+
+    /**
+     * Helper method to get the type of a cell.
+     * 
+     * @param cell
+     *            the cell.
+     * @return the type of the cell.
+     */
+    private byte type(int[] cell)
+    {
+        return types[cell[0]][cell[1]];
+    }
+
+    /**
+     * Writes the states with their rewards, then the terminal states.
+     * 
+     * @param out
+     *            where to write.
+     * @throws IOException
+     *             if the output cannot be written.
+     */
+    private void writeStates(Appendable out) throws IOException
+    {
+        // write states
+        out.append(Integer.toString(
+            cells.size() - tunnelCells.size() - rockCells.size())).append('\n');
+        for (int[] cell : cells)
+        {
+            byte type = type(cell);
+            if (type == OPEN || type == START)
+            {
+                writeName(out, cell).append(' ').append(
+                    Integer.toString(GridWorld.R_CELL)).append('\n');
+            }
+            else if (type == HOLE)
+            {
+                writeName(out, cell).append(' ').append(
+                    Integer.toString(GridWorld.R_HOLE)).append('\n');
+            }
+            else if (type == GOAL)
+            {
+                writeName(out, cell).append(' ').append(
+                    Integer.toString(GridWorld.R_GOAL)).append('\n');
+            }
+        }
+        // write goal states
+        for (int[] cell : holeCells)
+        {
+            writeName(out, cell).append(' ');
+        }
+        for (int[] cell : goalCells)
+        {
+            writeName(out, cell).append(' ');
+        }
+        out.append('\n');
+    }
+
+    /**
+     * Writes the direction uncertainty.
+     * 
+     * @param out
+     *            where to write.
+     * @throws IOException
+     *             if the output cannot be written.
+     */
+    private void writeUncertainty(Appendable out) throws IOException
+    {
+        // write action uncertainty
+        out.append(Integer.toString(DIR.length)).append('\n');
+        for (int k = 0; k < DIR.length; k++)
+        {
+            out.append(DIR[k]).append(' ');
+            int j = (DIR.length - k) % DIR.length;
+            for (int i = 0; i < directionUncertainty.length; i++)
+            {
+                out.append(Double.toString(directionUncertainty[j]))
+                    .append(' ');
+                j = (j + 1) % directionUncertainty.length;
+            }
+            out.append('\n');
+        }
+    }
+
+    /**
+     * Writes the path from a cell in one direction.
+     * 
+     * @param out
+     *            where to write.
+     * @param i
+     *            row index
+     * @param j
+     *            column index
+     * @param k
+     *            action (direction) index
+     * @param cell
+     *            the cell
+     * @throws IOException
+     *             if the output cannot be written.
+     */
+    private void writePath(Appendable out, int i, int j, int k, int[] cell)
+        throws IOException
+    {
+        int[] adjCell = getAdjacentCell(i, j, board, DIR[k]);
+        writeName(out, cell).append(' ').append(DIR[k]).append(' ');
+        if (adjCell == null || type(adjCell) == ROCK)
+        {
+            writeName(out, cell);
+        }
+        else if (type(adjCell) == TUNNEL)
+        {
+            int index = tunnelIndex[adjCell[0]][adjCell[1]];
+            int[] exit = tunnelCells.get((index + 1) % tunnelCells.size());
+            int[] outCell = getAdjacentCell(exit[0], exit[1], board, DIR[k]);
+            if (outCell != null && type(outCell) != TUNNEL
+                && type(outCell) != ROCK)
+            {
+                writeName(out, outCell);
+            }
+            else
+            {
+                writeName(out, cell);
+            }
+        }
+        else
+        {
+            // hole, goal, open or start
+            writeName(out, adjCell);
+        }
+        out.append('\n');
+    }
+
+    /**
+     * Writes the paths from every open cell.
+     * 
+     * @param out
+     *            where to write.
+     * @throws IOException
+     *             if the output cannot be written.
+     */
+    private void writePaths(Appendable out) throws IOException
+    {
+        out.append(Integer.toString(
+            (openCells.size() + startCells.size()) * DIR.length)).append('\n');
+        for (int i = 0; i < board.length; i++)
+        {
+            for (int j = 0; j < board[i].length; j++)
+            {
+                int[] cell = board[i][j];
+                if (type(cell) == OPEN || type(cell) == START)
+                {
+                    for (int k = 0; k < DIR.length; k++)
+                    {
+                        writePath(out, i, j, k, cell);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Creates a random Grid World with the start state in the southwest corner
+     * and at least one goal state in the northeast corner.
+     * 
+     * @param numRows
+     *            the number of rows in the grid world.
+     * @param numCols
+     *            the number of columnss in the grid world.
+     * @param numRocks
+     *            the number of rocks in the grid world.
+     * @param numTunnels
+     *            the number of tunnels in the grid world.
+     * @param numHoles
+     *            the number of holes in the grid world.
+     * @param numGoals
+     *            the number of goals in the grid world.
+     * @param gamma
+     *            the discount factor for each move.
+     * @return the string representation of the grid world to be read by the MDP
+     *         constructor.
+     */
+    public String createRandomGridWorld(int numRows, int numCols,
+        int numRocks, int numTunnels, int numHoles, int numGoals, double gamma)
+    {
+        // about 40 characters per cell, mostly for its four paths.
+        StringBuilder output = new StringBuilder(40 * numRows * numCols);
+        try
+        {
+            createRandomGridWorld(numRows, numCols, numRocks, numTunnels,
+                numHoles, numGoals, gamma, output);
+        }
+        catch (IOException e)
+        {
+            // a StringBuilder does not throw.
+            throw new IllegalStateException(e);
+        }
+        return output.toString();
+    }
+
+    /**
+     * Creates a random Grid World and writes it to a file.
+     * 
+     * @param numRows
+     *            the number of rows in the grid world.
+     * @param numCols
+     *            the number of columnss in the grid world.
+     * @param numRocks
+     *            the number of rocks in the grid world.
+     * @param numTunnels
+     *            the number of tunnels in the grid world.
+     * @param numHoles
+     *            the number of holes in the grid world.
+     * @param numGoals
+     *            the number of goals in the grid world.
+     * @param gamma
+     *            the discount factor for each move.
+     * @param file
+     *            the file to write.
+     * @throws IOException
+     *             if the file cannot be written.
+     * @see #createRandomGridWorld(int, int, int, int, int, int, double)
+     */
+    public void createRandomGridWorld(int numRows, int numCols,
+        int numRocks, int numTunnels, int numHoles, int numGoals, double gamma,
+        File file) throws IOException
+    {
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(
+            new FileOutputStream(file), StandardCharsets.US_ASCII), 1 << 16))
+        {
+            createRandomGridWorld(numRows, numCols, numRocks, numTunnels,
+                numHoles, numGoals, gamma, out);
+        }
+    }
+
+    /**
+     * Creates a random Grid World and streams its description, so that large
+     * worlds never have to be held as one String.
+     * 
+     * @param numRows
+     *            the number of rows in the grid world.
+     * @param numCols
+     *            the number of columnss in the grid world.
+     * @param numRocks
+     *            the number of rocks in the grid world.
+     * @param numTunnels
+     *            the number of tunnels in the grid world.
+     * @param numHoles
+     *            the number of holes in the grid world.
+     * @param numGoals
+     *            the number of goals in the grid world.
+     * @param gamma
+     *            the discount factor for each move.
+     * @param out
+     *            where to write the world.
+     * @throws IOException
+     *             if the output cannot be written.
+     * @see #createRandomGridWorld(int, int, int, int, int, int, double)
+     */
+    public void createRandomGridWorld(int numRows, int numCols,
+        int numRocks, int numTunnels, int numHoles, int numGoals, double gamma,
+        Appendable out) throws IOException
+    {
+        // check parameters.
+        int numCells = numRows * numCols;
+        if (numRocks + numTunnels + numHoles + numGoals >= numCells)
+        {
+            throw new IllegalArgumentException("Combined number of rocks, "
+                + "tunnels, holes, and goals must be less than number of grid "
+                + "locations.");
+        }
+
+        // create cells
+        createCells(numRows, numCols);
+
+        // Pick types of cells
+        mapLayout(numGoals, numRocks, numTunnels, numHoles);
+        markTypes();
+
+        // pick action uncertainty (same shape for every direction)
+        sampleUncertainty();
+
+        // write states
+        writeStates(out);
+
+        // write action uncertainty
+        writeUncertainty(out);
+
+        // write paths
+        writePaths(out);
+        // write gamma
+        out.append(Double.toString(gamma)).append('\n');
+        // write start state
+        writeName(out, startCells.get(0));
+    }
+
+    /**
+     * @return the action uncertainty of the last world created: the
+     *         probability of moving in the intended direction, to its right,
+     *         opposite, and to its left.
+     */
+    public double[] getDirectionUncertainty()
+    {
+        return directionUncertainty.clone();
+    }
+
+    /**
+     * Writes the name of the state at a grid location.
+     * 
+     * @param out
+     *            where to write.
+     * @param cell
+     *            the coordinates of the grid location
+     * @return the output, for chaining.
+     * @throws IOException
+     *             if the output cannot be written.
+     */
+    private Appendable writeName(Appendable out, int[] cell)
+        throws IOException
+    {
+        GridWorld.appendName(out, cell[0], cell[1]);
+        return out;
+    }
+
+    /**
+     * Returns the adjacent cell location in the GridWorld.
+     * 
+     * @param i
+     *            the row index.
+     * @param j
+     *            the column index.
+     * @param board
+     *            the board of cells.
+     * @param direction
+     *            the direction (N, E, S, or W)
+     * @return the cell location adjacent.
+     */
+    private int[] getAdjacentCell(int i, int j, int[][][] board,
+        char direction)
+    {
+        int numRows = board.length;
+        int numCols = board[0].length;
+        int[] adjacentCell = null;
+        if (direction == 'N' && i > 0)
+        {
+            adjacentCell = board[i - 1][j];
+        }
+        else if (direction == 'E' && j < numCols - 1)
+        {
+            adjacentCell = board[i][j + 1];
+        }
+        else if (direction == 'S' && i < numRows - 1)
+        {
+            adjacentCell = board[i + 1][j];
+        }
+        else if (direction == 'W' && j > 0)
+        {
+            adjacentCell = board[i][j - 1];
+        }
+        return adjacentCell;
+    }
+}
@@ -0,0 +1,122 @@
+package util;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A state index that keeps the states on the heap, in a concurrent hash map
+ * from state to id and an array from id to state. The index is safe to share
+ * between threads: looking up a state does not lock, and only assigning an
+ * id to a new state does.
+ *
+ * @author agent
+ * @version 2026-10-17
+ *
+ */
+public class HashStateIndex extends StateIndex
+{
+    private ConcurrentHashMap<State, Integer> ids;
+    // states[id] is written before size is incremented and before the id is
+    // published in ids, so a reader that has an id sees its state.
+    private volatile State[] states;
+    private volatile int size;
+
+    /**
+     * Constructor creates an empty index.
+     */
+    public HashStateIndex()
+    {
+        ids = new ConcurrentHashMap<State, Integer>();
+        states = new State[16];
+    }
+
+    /**
+     * Returns the id of the state, assigning the next id if it is new.
+     *
+     * @param s
+     *            the state.
+     * @return the id of the state.
+     */
+    @Override
+    public int intern(State s)
+    {
+        Integer id = ids.get(s);
+        return (id == null) ? add(s) : id;
+    }
+
+    /**
+     * Helper method assigns the next id to a state, unless another thread
+     * got there first.
+     *
+     * @param s
+     *            the state.
+     * @return the id of the state.
+     */
+    private synchronized int add(State s)
+    {
+        Integer id = ids.get(s);
+        if (id == null)
+        {
+            id = size;
+            if (id == states.length)
+            {
+                states = Arrays.copyOf(states, 2 * id);
+            }
+            states[id] = s;
+            size = id + 1;
+            ids.put(s, id);
+        }
+        return id;
+    }
+
+    /**
+     * Returns the id of the state without adding it.
+     *
+     * @param s
+     *            the state.
+     * @return the id of the state, or -1 if it has not been interned.
+     */
+    @Override
+    public int find(Object s)
+    {
+        Integer id = (s == null) ? null : ids.get(s);
+        return (id == null) ? -1 : id;
+    }
+
+    /**
+     * @param id
+     *            the id of a state.
+     * @return the state with this id.
+     */
+    @Override
+    public State get(int id)
+    {
+        if (id < 0 || id >= size)
+        {
+            throw new IndexOutOfBoundsException("No state with id " + id);
+        }
+        return states[id];
+    }
+
+    /**
+     * @return the number of states interned.
+     */
+    @Override
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * @return the interned states in order of their ids.
+     */
+    @Override
+    public List<State> states()
+    {
+        int n = size;
+        return Collections.unmodifiableList(Arrays.asList(Arrays.copyOf(
+            states, n)));
+    }
+}
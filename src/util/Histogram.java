@@ -0,0 +1,196 @@
+package util;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongBinaryOperator;
+
+/**
+ * A histogram of non-negative longs that several threads can record into
+ * without a lock. Values below 8 have a bucket each, and each range
+ * [2^e, 2^(e+1)) above is split into 8 equal buckets, so percentiles,
+ * reported as the upper end of their bucket, are within 12.5%.
+ *
+ * @author agent
+ * @version 2026-10-17
+ *
+ */
+public class Histogram
+{
+    private static final int SUB_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int NUM_BUCKETS = SUB_BUCKETS
+        + (63 - SUB_BITS) * SUB_BUCKETS;
+    private LongAdder[] buckets;
+    private LongAdder count;
+    private LongAdder sum;
+    private LongAccumulator max;
+
+    /**
+     * Constructor creates an empty histogram.
+     */
+    public Histogram()
+    {
+        buckets = new LongAdder[NUM_BUCKETS];
+        for (int b = 0; b < NUM_BUCKETS; b++)
+        {
+            buckets[b] = new LongAdder();
+        }
+        count = new LongAdder();
+        sum = new LongAdder();
+        max = new LongAccumulator(new LongBinaryOperator()
+        {
+            @Override
+            public long applyAsLong(long x, long y)
+            {
+                return Math.max(x, y);
+            }
+        }, 0L);
+    }
+
+    /**
+     * Records a value.
+     *
+     * @param value
+     *            the value; negative values are recorded as 0.
+     */
+    public void record(long value)
+    {
+        value = Math.max(value, 0L);
+        buckets[bucket(value)].increment();
+        count.increment();
+        sum.add(value);
+        max.accumulate(value);
+    }
+
+    /**
+     * @return a new array of counts, one per bucket, for use with bucket()
+     *         and addCounts() to record values without touching the
+     *         histogram until they are added.
+     */
+    public static long[] newCounts()
+    {
+        return new long[NUM_BUCKETS];
+    }
+
+    /**
+     * Adds values counted elsewhere, e.g., by one thread.
+     *
+     * @param counts
+     *            the number of values in each bucket, from newCounts(),
+     *            which are set back to 0.
+     * @param total
+     *            the sum of the values.
+     * @param largest
+     *            the largest value.
+     */
+    public void addCounts(long[] counts, long total, long largest)
+    {
+        long n = 0;
+        for (int b = 0; b < NUM_BUCKETS; b++)
+        {
+            if (counts[b] != 0)
+            {
+                buckets[b].add(counts[b]);
+                n += counts[b];
+                counts[b] = 0;
+            }
+        }
+        count.add(n);
+        sum.add(total);
+        max.accumulate(largest);
+    }
+
+    /**
+     * Finds the bucket of a value.
+     *
+     * @param value
+     *            the value, at least 0.
+     * @return the index of its bucket.
+     */
+    public static int bucket(long value)
+    {
+        if (value < SUB_BUCKETS)
+        {
+            return (int) value;
+        }
+        int e = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (e - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return SUB_BUCKETS + (e - SUB_BITS) * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * Helper method finds the largest value in a bucket.
+     *
+     * @param b
+     *            the index of the bucket.
+     * @return the largest value in it.
+     */
+    private static long upperBound(int b)
+    {
+        if (b < SUB_BUCKETS)
+        {
+            return b;
+        }
+        int e = (b - SUB_BUCKETS) / SUB_BUCKETS + SUB_BITS;
+        long sub = (b - SUB_BUCKETS) % SUB_BUCKETS;
+        long upper = ((SUB_BUCKETS + sub + 1) << (e - SUB_BITS)) - 1;
+        // the last bucket would overflow
+        return (upper < 0) ? Long.MAX_VALUE : upper;
+    }
+
+    /**
+     * @return the number of values recorded.
+     */
+    public long count()
+    {
+        return count.sum();
+    }
+
+    /**
+     * @return the mean of the values recorded, or 0.0 if there are none.
+     */
+    public double mean()
+    {
+        long n = count.sum();
+        return (n == 0) ? 0.0 : (double) sum.sum() / n;
+    }
+
+    /**
+     * @return the largest value recorded, or 0 if there are none.
+     */
+    public long max()
+    {
+        return max.get();
+    }
+
+    /**
+     * Returns an upper bound on the value below which a fraction p of the
+     * values fall.
+     *
+     * @param p
+     *            the fraction, between 0 and 1.
+     * @return the upper end of the bucket holding the percentile, but no
+     *         more than the largest value, or 0 if there are no values.
+     */
+    public long percentile(double p)
+    {
+        long[] counts = new long[NUM_BUCKETS];
+        long n = 0;
+        for (int b = 0; b < NUM_BUCKETS; b++)
+        {
+            counts[b] = buckets[b].sum();
+            n += counts[b];
+        }
+        long rank = (long) Math.ceil(p * n);
+        long seen = 0;
+        for (int b = 0; b < NUM_BUCKETS; b++)
+        {
+            seen += counts[b];
+            if (seen >= rank && seen > 0)
+            {
+                return Math.min(upperBound(b), max.get());
+            }
+        }
+        return 0L;
+    }
+}
@@ -1,9 +1,14 @@
 package util;
 
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.List;
 import java.util.Random;
 import java.util.Scanner;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
  * Represents a Markov Decision Process.
@@ -14,14 +19,41 @@ import java.util.Scanner;
  */
 public class MarkovDecisionProcess implements Cloneable
 {
-    private ArrayList<GridCell> states;
-    private ArrayList<String> actions;
-    private GridCell currentState;
-    // state transition matrix
-    private double[][][] transProbs;
+    // the states by column: reward, type, grid location packed by
+    // GridWorld.packRowCol, and which are terminal. They are never modified
+    // once read, so copies share them.
+    private static final int MAX_INDEX = 0xFFFF;
+    private double[] rewards;
+    private byte[] types;
+    private int[] rowCols;
+    private BitSet terminal;
+    // the names of the states, or null if each is the name GridWorld gives
+    // its grid location
+    private String[] names;
+    // the states as frozen grid cells, made only as they are asked for
+    private volatile AtomicReferenceArray<GridCell> cells;
+    private ActionSpace actions;
+    private int currentIndex;
+    // state index of each grid location
+    private int[][] grid;
+    // sparse state transition model
+    private TransitionModel transitions;
     private double gamma;
     private double[][] actionUncertainty;
     private Random rand;
+    private boolean legacySampling;
+    // gamma^t for the first steps of an episode, filled in on first use
+    private static final int MAX_DISCOUNTS = 1024;
+    private double[] discounts;
+    // moves counted since the last flush into the metrics, if any
+    private static final int FLUSH_EVERY = 1024;
+    private Metrics metrics;
+    private long moves;
+    private long blockedMoves;
+    // stamps each world read, so that what is learned about its states can
+    // be cached until it is read again; copies share the stamp.
+    private static final AtomicLong WORLDS = new AtomicLong();
+    private long world;
 
     /**
      * Constructor reads the parameters from a scanner.
@@ -49,6 +81,49 @@ public class MarkovDecisionProcess implements Cloneable
         initialize(scan);
     }
 
+    /**
+     * Constructor takes parameters that have already been read, e.g., by
+     * WorldLoader.
+     * 
+     * @param names
+     *            the name of each state, or null for the names GridWorld
+     *            gives their grid locations.
+     * @param rewards
+     *            the reward of each state.
+     * @param terminal
+     *            the terminal states.
+     * @param stateRows
+     *            the row index of each state.
+     * @param stateCols
+     *            the column index of each state.
+     * @param actions
+     *            the actions.
+     * @param actionUncertainty
+     *            actionUncertainty[i][j] = P(doing action j | choosing i).
+     * @param transitions
+     *            the state transition model.
+     * @param gamma
+     *            the discount rate.
+     * @param start
+     *            the index of the current state.
+     * @param rand
+     *            the random number generator.
+     */
+    MarkovDecisionProcess(String[] names, double[] rewards, BitSet terminal,
+        int[] stateRows, int[] stateCols, ActionSpace actions,
+        double[][] actionUncertainty, TransitionModel transitions,
+        double gamma, int start, Random rand)
+    {
+        setStates(names, rewards, terminal, stateRows, stateCols);
+        this.actions = actions;
+        this.actionUncertainty = actionUncertainty;
+        this.transitions = transitions;
+        this.gamma = gamma;
+        this.rand = rand;
+        world = WORLDS.incrementAndGet();
+        setCurrent(start);
+    }
+
     /**
      * Initialize the MDP with the scanner.
      * 
@@ -64,7 +139,105 @@ public class MarkovDecisionProcess implements Cloneable
         // Fill the state transition matrix
         readTransitions(scan);
         gamma = scan.nextDouble();
-        currentState = states.get(states.indexOf(new GridCell(scan.next(), 0)));
+        // the powers of the old world's gamma no longer apply
+        discounts = null;
+        setCurrent(requireState(scan.next()));
+        world = WORLDS.incrementAndGet();
+    }
+
+    /**
+     * Helper method to store the states by column and index them by their
+     * grid location.
+     * 
+     * @param names
+     *            the name of each state, or null.
+     * @param rewards
+     *            the reward of each state.
+     * @param terminal
+     *            the terminal states.
+     * @param rows
+     *            the row index of each state.
+     * @param cols
+     *            the column index of each state.
+     */
+    private void setStates(String[] names, double[] rewards, BitSet terminal,
+        int[] rows, int[] cols)
+    {
+        int numStates = rewards.length;
+        types = new byte[numStates];
+        rowCols = new int[numStates];
+        boolean named = false;
+        for (int i = 0; i < numStates; i++)
+        {
+            if (rows[i] > MAX_INDEX || cols[i] > MAX_INDEX)
+            {
+                throw new IllegalArgumentException("State at row " + rows[i]
+                    + ", column " + cols[i] + " is beyond row or column "
+                    + MAX_INDEX);
+            }
+            types[i] = GridCell.typeOf(rewards[i]);
+            rowCols[i] = GridWorld.packRowCol(rows[i], cols[i]);
+            named |= names != null
+                && !GridWorld.isName(names[i], rows[i], cols[i]);
+        }
+        this.rewards = rewards;
+        this.terminal = terminal;
+        this.names = named ? names : null;
+        grid = grid(rows, cols);
+        cells = null;
+    }
+
+    /**
+     * Builds the table of state indices by grid location.
+     * 
+     * @param rows
+     *            the row index of each state.
+     * @param cols
+     *            the column index of each state.
+     * @return grid[row][col] = the index of the state there, or -1.
+     */
+    static int[][] grid(int[] rows, int[] cols)
+    {
+        int numRows = 0;
+        int numCols = 0;
+        for (int i = 0; i < rows.length; i++)
+        {
+            numRows = Math.max(numRows, rows[i] + 1);
+            numCols = Math.max(numCols, cols[i] + 1);
+        }
+        int[][] grid = new int[numRows][numCols];
+        for (int[] row : grid)
+        {
+            Arrays.fill(row, -1);
+        }
+        for (int i = 0; i < rows.length; i++)
+        {
+            if (grid[rows[i]][cols[i]] >= 0)
+            {
+                throw new IllegalArgumentException("Two states at row "
+                    + rows[i] + ", column " + cols[i]);
+            }
+            grid[rows[i]][cols[i]] = i;
+        }
+        return grid;
+    }
+
+    /**
+     * Helper method to look up a state by name.
+     * 
+     * @param name
+     *            the name of the state.
+     * @return the index of the state.
+     */
+    private int requireState(String name)
+    {
+        int index = indexOf(GridWorld.nameToRow(name),
+            GridWorld.nameToCol(name));
+        if (index < 0 || !hasName(index, name))
+        {
+            throw new IllegalArgumentException("Unknown state " + name);
+        }
+        return index;
     }
 
     /**
@@ -75,20 +248,22 @@ public class MarkovDecisionProcess implements Cloneable
      */
     private void readTransitions(Scanner scan)
     {
-        int numStates = states.size();
+        int numStates = rewards.length;
         int numActions = actions.size();
-        transProbs = new double[numStates][numActions][numStates];
         int numTransitions = scan.nextInt();
+        TransitionModel.Builder builder = new TransitionModel.Builder(
+            numStates, numActions, numTransitions * numActions);
         for (int i = 0; i < numTransitions; i++)
         {
-            int s0 = states.indexOf(new GridCell(scan.next(), 0));
+            int s0 = requireState(scan.next());
             int a = actions.indexOf(scan.next());
-            int s1 = states.indexOf(new GridCell(scan.next(), 0));
+            int s1 = requireState(scan.next());
             for (int j = 0; j < numActions; j++)
             {
-                transProbs[s0][j][s1] += actionUncertainty[j][a];
+                builder.add(s0, j, s1, actionUncertainty[j][a]);
             }
         }
+        transitions = builder.build();
     }
 
     /**
@@ -100,16 +275,17 @@ public class MarkovDecisionProcess implements Cloneable
     private void readActions(Scanner scan)
     {
         int numActions = scan.nextInt();
-        actions = new ArrayList<String>(numActions);
+        ArrayList<String> names = new ArrayList<String>(numActions);
         actionUncertainty = new double[numActions][numActions];
         for (int i = 0; i < numActions; i++)
         {
-            actions.add(scan.next());
+            names.add(scan.next());
             for (int j = 0; j < numActions; j++)
             {
                 actionUncertainty[i][j] = scan.nextDouble();
             }
         }
+        actions = new ActionSpace(names);
     }
 
     /**
@@ -121,17 +297,23 @@ public class MarkovDecisionProcess implements Cloneable
     private void readStates(Scanner scan)
     {
         int numStates = scan.nextInt();
-        states = new ArrayList<GridCell>(numStates);
+        String[] names = new String[numStates];
+        double[] rewards = new double[numStates];
+        int[] rows = new int[numStates];
+        int[] cols = new int[numStates];
         for (int i = 0; i < numStates; i++)
         {
-            states.add(new GridCell(scan.next(), scan.nextInt()));
+            names[i] = scan.next();
+            rewards[i] = scan.nextInt();
+            rows[i] = GridWorld.nameToRow(names[i]);
+            cols[i] = GridWorld.nameToCol(names[i]);
         }
+        BitSet terminal = new BitSet(numStates);
+        setStates(names, rewards, terminal, rows, cols);
         // read the goal states
         while (!scan.hasNextInt())
         {
-            GridCell s =
-                states.get(states.indexOf(new GridCell(scan.next(), 0)));
-            s.setTerminal();
+            terminal.set(requireState(scan.next()));
         }
     }
 
@@ -140,42 +322,310 @@ public class MarkovDecisionProcess implements Cloneable
      * 
      * @param s
      *            the current state.
+     * @throws IllegalArgumentException
+     *             if the state is not in the MDP.
      */
     public void setCurrent(GridCell s)
     {
-        currentState = s;
+        int index = indexOf(s);
+        if (index < 0)
+        {
+            throw new IllegalArgumentException("Unknown state " + s);
+        }
+        currentIndex = index;
     }
 
     /**
-     * @return the current state.
+     * Sets the current state by its index.
+     * 
+     * @param index
+     *            the index of the current state.
      */
-    public GridCell getCurrent()
+    public void setCurrent(int index)
     {
-        return (GridCell) currentState.clone();
+        if (index < 0 || index >= rewards.length)
+        {
+            throw new IndexOutOfBoundsException("No state " + index);
+        }
+        currentIndex = index;
     }
 
     /**
-     * @return all the states.
+     * @return the index of the current state.
      */
-    public List<GridCell> getStates()
+    public int getCurrentIndex()
     {
-        ArrayList<GridCell> copy = new ArrayList<GridCell>(states.size());
-        for (GridCell s : states)
+        return currentIndex;
+    }
+
+    /**
+     * @return the number of rows in the grid.
+     */
+    public int getNumRows()
+    {
+        return grid.length;
+    }
+
+    /**
+     * @return the number of columns in the grid.
+     */
+    public int getNumCols()
+    {
+        return grid.length == 0 ? 0 : grid[0].length;
+    }
+
+    /**
+     * Returns the index of the state at a grid location.
+     * 
+     * @param row
+     *            the row index.
+     * @param col
+     *            the column index.
+     * @return the index of the state, or -1 if there is no state there.
+     */
+    public int indexOf(int row, int col)
+    {
+        if (row < 0 || row >= grid.length || col < 0 || col >= grid[row].length)
+        {
+            return -1;
+        }
+        return grid[row][col];
+    }
+
+    /**
+     * Returns the index of a state, looked up by its grid location.
+     * 
+     * @param s
+     *            the state.
+     * @return the index of the state, or -1 if it is not in the MDP.
+     */
+    public int indexOf(GridCell s)
+    {
+        String name = s.name();
+        int index = indexOf(GridWorld.nameToRow(name), GridWorld.nameToCol(name));
+        if (index >= 0 && !hasName(index, name))
+        {
+            return -1;
+        }
+        return index;
+    }
+
+    /**
+     * @param index
+     *            the index of a state.
+     * @return the row index of the state's grid location.
+     */
+    public int rowOf(int index)
+    {
+        return GridWorld.unpackRow(rowCols[index]);
+    }
+
+    /**
+     * @param index
+     *            the index of a state.
+     * @return the column index of the state's grid location.
+     */
+    public int colOf(int index)
+    {
+        return GridWorld.unpackCol(rowCols[index]);
+    }
+
+    /**
+     * @param index
+     *            the index of a state.
+     * @return the reward for the state.
+     */
+    public double reward(int index)
+    {
+        return rewards[index];
+    }
+
+    /**
+     * @param index
+     *            the index of a state.
+     * @return true if the state is a terminal state.
+     */
+    public boolean isTerminal(int index)
+    {
+        return terminal.get(index);
+    }
+
+    /**
+     * @param index
+     *            the index of a state.
+     * @return the type of the state, GridCell.GOAL, HOLE, NORMAL or OTHER.
+     */
+    public byte cellType(int index)
+    {
+        return types[index];
+    }
+
+    /**
+     * @return true if some state has a name other than the one rowColToName
+     *         gives its grid location.
+     */
+    boolean hasCustomNames()
+    {
+        return names != null;
+    }
+
+    /**
+     * Finds the name of a state.
+     * 
+     * @param index
+     *            the index of a state.
+     * @return the name.
+     */
+    String nameOf(int index)
+    {
+        return (names != null) ? names[index]
+            : GridWorld.rowColToName(rowOf(index), colOf(index));
+    }
+
+    /**
+     * Helper method checks the name of a state without constructing it.
+     * 
+     * @param index
+     *            the index of a state.
+     * @param name
+     *            the name.
+     * @return true if the state has the name.
+     */
+    private boolean hasName(int index, String name)
+    {
+        return (names != null) ? names[index].equals(name)
+            : GridWorld.isName(name, rowOf(index), colOf(index));
+    }
+
+    /**
+     * Returns a state as a grid cell, which is made the first time it is
+     * asked for and then shared.
+     * 
+     * @param index
+     *            the index of a state.
+     * @return the state, which is shared and cannot be modified.
+     */
+    public GridCell getState(int index)
+    {
+        AtomicReferenceArray<GridCell> cache = cells;
+        if (cache == null)
+        {
+            synchronized (this)
+            {
+                if (cells == null)
+                {
+                    cells = new AtomicReferenceArray<GridCell>(rewards.length);
+                }
+                cache = cells;
+            }
+        }
+        GridCell cell = cache.get(index);
+        if (cell == null)
         {
-            copy.add((GridCell) s.clone());
+            cell = new GridCell(nameOf(index), rewards[index]);
+            if (terminal.get(index))
+            {
+                cell.setTerminal();
+            }
+            cell.freeze();
+            if (!cache.compareAndSet(index, null, cell))
+            {
+                cell = cache.get(index);
+            }
         }
+        return cell;
+    }
+
+    /**
+     * @return the number of states.
+     */
+    public int getNumStates()
+    {
+        return rewards.length;
+    }
+
+    /**
+     * @return a number that identifies the world, the same for copies of
+     *         the MDP and different after it is initialized again.
+     */
+    long worldId()
+    {
+        return world;
+    }
+
+    /**
+     * Returns a copy of the MDP that samples its moves with its own random
+     * number generator, e.g., for use on another thread.
+     * 
+     * @param seed
+     *            the seed for the copy's random number generator.
+     * @return the copy.
+     */
+    MarkovDecisionProcess copy(long seed)
+    {
+        MarkovDecisionProcess copy = (MarkovDecisionProcess) clone();
+        copy.rand = new Random(seed);
+        copy.moves = 0;
+        copy.blockedMoves = 0;
+        copy.setCurrent(currentIndex);
         return copy;
     }
 
+    /**
+     * @return the current state, which is shared and cannot be modified.
+     */
+    public GridCell getCurrent()
+    {
+        return (currentIndex < 0) ? null : getState(currentIndex);
+    }
+
+    /**
+     * @return an unmodifiable view of all the states, by index, whose grid
+     *         cells are made as they are asked for.
+     */
+    public List<GridCell> getStates()
+    {
+        return new AbstractList<GridCell>()
+        {
+            @Override
+            public GridCell get(int index)
+            {
+                return getState(index);
+            }
+
+            @Override
+            public int size()
+            {
+                return rewards.length;
+            }
+        };
+    }
+
     /**
      * @return all the actions.
      */
     public List<String> getActions()
     {
-        ArrayList<String> copy = new ArrayList<String>(actions.size());
-        for (String s : actions)
+        return new ArrayList<String>(actions.names());
+    }
+
+    /**
+     * @return the actions, by index.
+     */
+    public ActionSpace getActionSpace()
+    {
+        return actions;
+    }
+
+    /**
+     * @return actionUncertainty[i][j] = P(doing action j | choosing action i).
+     */
+    public double[][] getActionUncertainty()
+    {
+        double[][] copy = new double[actionUncertainty.length][];
+        for (int i = 0; i < copy.length; i++)
         {
-            copy.add(s);
+            copy[i] = actionUncertainty[i].clone();
         }
         return copy;
     }
@@ -188,6 +638,32 @@ public class MarkovDecisionProcess implements Cloneable
         return gamma;
     }
 
+    /**
+     * Returns the discount for a reward received after t steps. The powers
+     * for the first steps of an episode are computed once and remembered.
+     * 
+     * @param t
+     *            the number of steps.
+     * @return Math.pow(gamma, t).
+     */
+    double discount(int t)
+    {
+        if (t >= MAX_DISCOUNTS)
+        {
+            return Math.pow(gamma, t);
+        }
+        if (discounts == null)
+        {
+            double[] powers = new double[MAX_DISCOUNTS];
+            for (int i = 0; i < MAX_DISCOUNTS; i++)
+            {
+                powers[i] = Math.pow(gamma, i);
+            }
+            discounts = powers;
+        }
+        return discounts[t];
+    }
+
     /**
      * Performs the desired action.
      * 
@@ -196,20 +672,95 @@ public class MarkovDecisionProcess implements Cloneable
      */
     public void takeAction(String action)
     {
-        // System.out.println("MDP: moving " + actions.get(actionIndex));
+        int a = actions.indexOf(action);
+        if (a < 0)
+        {
+            throw new IllegalArgumentException("Unknown action " + action);
+        }
+        takeAction(a);
+    }
+
+    /**
+     * Performs the desired action by index.
+     * 
+     * @param a
+     *            the action index.
+     */
+    public void takeAction(int a)
+    {
+        // System.out.println("MDP: moving " + actions.name(a));
+        if (!actions.contains(a))
+        {
+            throw new IllegalArgumentException("Unknown action " + a);
+        }
         double r = rand.nextDouble();
-        double sum = 0.0;
-        GridCell newState = null;
-        for (int i = 0; i < states.size(); i++)
+        int from = currentIndex;
+        if (legacySampling)
+        {
+            setCurrent(transitions.sampleCumulative(currentIndex, a, r));
+        }
+        else
         {
-            newState = states.get(i);
-            sum += transProb(currentState, action, newState);
-            if (sum >= r)
+            int next = transitions.sample(currentIndex, a, r);
+            // a state without transitions (e.g., terminal) keeps the agent.
+            if (next >= 0)
             {
-                break;
+                setCurrent(next);
             }
         }
-        currentState = newState;
+        if (metrics != null)
+        {
+            moves++;
+            if (currentIndex == from)
+            {
+                blockedMoves++;
+            }
+            if (moves == FLUSH_EVERY)
+            {
+                flushMetrics();
+            }
+        }
+    }
+
+    /**
+     * Records the moves this MDP samples into a metrics registry, or stops
+     * recording them. Moves are counted locally and added to the registry
+     * every FLUSH_EVERY moves, or by flushMetrics.
+     * 
+     * @param metrics
+     *            the registry, or null to stop recording.
+     */
+    public void setMetrics(Metrics metrics)
+    {
+        flushMetrics();
+        this.metrics = metrics;
+    }
+
+    /**
+     * Adds the moves counted since the last flush to the metrics registry.
+     */
+    public void flushMetrics()
+    {
+        if (metrics != null && moves > 0)
+        {
+            metrics.recordMoves(moves, blockedMoves);
+        }
+        moves = 0;
+        blockedMoves = 0;
+    }
+
+    /**
+     * Selects how takeAction samples the next state. By default it uses an
+     * O(1) alias table. In legacy mode it searches the cumulative transition
+     * probabilities in state order, which reproduces the successor sequence
+     * of earlier versions for the same seed.
+     * 
+     * @param legacy
+     *            true to sample in legacy mode.
+     */
+    public void setLegacySampling(boolean legacy)
+    {
+        legacySampling = legacy;
     }
 
     @Override
@@ -219,25 +770,8 @@ public class MarkovDecisionProcess implements Cloneable
         try
         {
             answer = (MarkovDecisionProcess) super.clone();
-            answer.states = new ArrayList<GridCell>(states.size());
-            for (GridCell s : states)
-            {
-                answer.states.add((GridCell) s.clone());
-            }
-            answer.actions = new ArrayList<String>(actions);
-
-            answer.transProbs = transProbs.clone();
-            for (int i = 0; i < answer.transProbs.length; i++)
-            {
-                answer.transProbs[i] = transProbs[i].clone();
-            }
-            for (int i = 0; i < answer.transProbs.length; i++)
-            {
-                for (int j = 0; j < answer.transProbs[i].length; j++)
-                {
-                    answer.transProbs[i][j] = transProbs[i][j].clone();
-                }
-            }
+            // the states, actions and transition model are immutable, so
+            // they are shared, as are the grid cells made so far.
         }
         catch (CloneNotSupportedException e)
         {
@@ -259,8 +793,31 @@ public class MarkovDecisionProcess implements Cloneable
      */
     public double transProb(GridCell s1, String a, GridCell s2)
     {
-        return transProbs[states.indexOf(s1)][actions.indexOf(a)][states
-            .indexOf(s2)];
+        return transitions.prob(indexOf(s1), actions.indexOf(a), indexOf(s2));
+    }
+
+    /**
+     * Returns P(s2|s1,a) by index.
+     * 
+     * @param s1
+     *            Initial state index.
+     * @param a
+     *            Action index.
+     * @param s2
+     *            Final state index.
+     * @return P(s2|s1,a)
+     */
+    public double transProb(int s1, int a, int s2)
+    {
+        return transitions.prob(s1, a, s2);
+    }
+
+    /**
+     * @return the sparse state transition model.
+     */
+    public TransitionModel getTransitions()
+    {
+        return transitions;
     }
 
 }
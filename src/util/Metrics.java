@@ -0,0 +1,296 @@
+package util;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A registry of named counters, histograms and gauges that Game,
+ * MarkovDecisionProcess and QLearner record into while training, and that a
+ * MetricsReporter reads from another thread. Counters and histograms are
+ * built on LongAdder, so recording never locks. To keep recording cheap,
+ * the parts that record on every step keep plain counts of their own and
+ * add them here in batches, and episodes are buffered per thread and added
+ * every FLUSH_EPISODES episodes, or when the thread calls flush().
+ *
+ * @author agent
+ * @version 2026-10-17
+ *
+ */
+public class Metrics
+{
+    /** The number of episodes played. */
+    public static final String EPISODES = "game.episodes";
+    /** The number of moves made. */
+    public static final String STEPS = "game.steps";
+    /** The distribution of moves per episode. */
+    public static final String EPISODE_LENGTH = "game.episodeLength";
+    /** Estimated nanoseconds spent in the player's playAction. */
+    public static final String PLAY_NANOS = "game.playNanos";
+    /** Estimated nanoseconds spent in the MDP's takeAction. */
+    public static final String TAKE_ACTION_NANOS = "game.takeActionNanos";
+    /** The number of moves the MDP sampled. */
+    public static final String MOVES = "mdp.moves";
+    /** The number of moves that left the agent where it was. */
+    public static final String BLOCKED_MOVES = "mdp.blockedMoves";
+    /** The number of actions chosen for their exploration bonus. */
+    public static final String EXPLORATORY = "learner.exploratory";
+    /** The number of actions chosen for their Q value. */
+    public static final String GREEDY = "learner.greedy";
+    /** The fraction of actions that were exploratory. */
+    public static final String EXPLORATORY_FRACTION =
+        "learner.exploratoryFraction";
+    /** The number of states the learner has seen. */
+    public static final String STATES = "learner.states";
+    /** The bytes held by the learner's Q and N tables. */
+    public static final String TABLE_BYTES = "learner.tableBytes";
+
+    private static final int FLUSH_EPISODES = 256;
+    private ConcurrentHashMap<String, LongAdder> counters;
+    private ConcurrentHashMap<String, Histogram> histograms;
+    private ConcurrentHashMap<String, Gauge> gauges;
+    // the instruments recorded while training, looked up once
+    private LongAdder episodes;
+    private LongAdder steps;
+    private Histogram episodeLength;
+    private LongAdder playNanos;
+    private LongAdder takeActionNanos;
+    private LongAdder moves;
+    private LongAdder blockedMoves;
+    private LongAdder exploratory;
+    private LongAdder greedy;
+    private ThreadLocal<Recorder> recorders;
+
+    /**
+     * A value that is read when a snapshot is taken.
+     */
+    public interface Gauge
+    {
+        /**
+         * @return the current value.
+         */
+        double value();
+    }
+
+    /**
+     * The episodes one thread has recorded but not yet added.
+     */
+    private class Recorder
+    {
+        private long[] lengths = Histogram.newCounts();
+        private int numEpisodes;
+        private long numSteps;
+        private long longest;
+        private long playNanos;
+        private long takeActionNanos;
+
+        /**
+         * Adds the episodes to the registry.
+         */
+        void flush()
+        {
+            episodes.add(numEpisodes);
+            steps.add(numSteps);
+            episodeLength.addCounts(lengths, numSteps, longest);
+            Metrics.this.playNanos.add(playNanos);
+            Metrics.this.takeActionNanos.add(takeActionNanos);
+            numEpisodes = 0;
+            numSteps = 0;
+            longest = 0;
+            playNanos = 0;
+            takeActionNanos = 0;
+        }
+    }
+
+    /**
+     * Constructor creates an empty registry.
+     */
+    public Metrics()
+    {
+        counters = new ConcurrentHashMap<String, LongAdder>();
+        histograms = new ConcurrentHashMap<String, Histogram>();
+        gauges = new ConcurrentHashMap<String, Gauge>();
+        episodes = counter(EPISODES);
+        steps = counter(STEPS);
+        episodeLength = histogram(EPISODE_LENGTH);
+        playNanos = counter(PLAY_NANOS);
+        takeActionNanos = counter(TAKE_ACTION_NANOS);
+        moves = counter(MOVES);
+        blockedMoves = counter(BLOCKED_MOVES);
+        exploratory = counter(EXPLORATORY);
+        greedy = counter(GREEDY);
+        recorders = new ThreadLocal<Recorder>()
+        {
+            @Override
+            protected Recorder initialValue()
+            {
+                return new Recorder();
+            }
+        };
+        gauge(EXPLORATORY_FRACTION, new Gauge()
+        {
+            @Override
+            public double value()
+            {
+                long e = exploratory.sum();
+                long total = e + greedy.sum();
+                return (total == 0) ? 0.0 : (double) e / total;
+            }
+        });
+    }
+
+    /**
+     * Records an episode played by Game.
+     *
+     * @param numSteps
+     *            the number of moves in the episode.
+     * @param playTime
+     *            the estimated nanoseconds spent in playAction.
+     * @param takeActionTime
+     *            the estimated nanoseconds spent in takeAction.
+     */
+    public void recordEpisode(int numSteps, long playTime,
+        long takeActionTime)
+    {
+        Recorder r = recorders.get();
+        r.lengths[Histogram.bucket(numSteps)]++;
+        r.numEpisodes++;
+        r.numSteps += numSteps;
+        r.longest = Math.max(r.longest, numSteps);
+        r.playNanos += playTime;
+        r.takeActionNanos += takeActionTime;
+        if (r.numEpisodes == FLUSH_EPISODES)
+        {
+            r.flush();
+        }
+    }
+
+    /**
+     * Adds the episodes the calling thread has recorded since its last
+     * flush to the registry.
+     */
+    public void flush()
+    {
+        recorders.get().flush();
+    }
+
+    /**
+     * Records moves sampled by an MDP.
+     *
+     * @param numMoves
+     *            the number of moves.
+     * @param numBlocked
+     *            the number of them that left the agent where it was.
+     */
+    public void recordMoves(long numMoves, long numBlocked)
+    {
+        moves.add(numMoves);
+        blockedMoves.add(numBlocked);
+    }
+
+    /**
+     * Records actions chosen by a QLearner.
+     *
+     * @param numExploratory
+     *            the number chosen for their exploration bonus.
+     * @param numGreedy
+     *            the number chosen for their Q value.
+     */
+    public void recordActions(long numExploratory, long numGreedy)
+    {
+        exploratory.add(numExploratory);
+        greedy.add(numGreedy);
+    }
+
+    /**
+     * Returns the counter with this name, creating it if it is new.
+     *
+     * @param name
+     *            the name.
+     * @return the counter.
+     */
+    public LongAdder counter(String name)
+    {
+        LongAdder counter = counters.get(name);
+        if (counter == null)
+        {
+            counters.putIfAbsent(name, new LongAdder());
+            counter = counters.get(name);
+        }
+        return counter;
+    }
+
+    /**
+     * Returns the histogram with this name, creating it if it is new.
+     *
+     * @param name
+     *            the name.
+     * @return the histogram.
+     */
+    public Histogram histogram(String name)
+    {
+        Histogram histogram = histograms.get(name);
+        if (histogram == null)
+        {
+            histograms.putIfAbsent(name, new Histogram());
+            histogram = histograms.get(name);
+        }
+        return histogram;
+    }
+
+    /**
+     * Registers a gauge, replacing any gauge with the same name.
+     *
+     * @param name
+     *            the name.
+     * @param gauge
+     *            the gauge.
+     */
+    public void gauge(String name, Gauge gauge)
+    {
+        gauges.put(name, gauge);
+    }
+
+    /**
+     * @param name
+     *            the name of a counter.
+     * @return true if the name is a counter rather than a gauge or a part
+     *         of a histogram.
+     */
+    public boolean isCounter(String name)
+    {
+        return counters.containsKey(name);
+    }
+
+    /**
+     * Reads every counter and gauge, and the count, mean, median, 99th
+     * percentile and maximum of every histogram, e.g.,
+     * game.episodeLength.p99. Values recorded while the snapshot is taken
+     * may or may not be in it.
+     *
+     * @return the values, by name, in order of name.
+     */
+    public Map<String, Double> snapshot()
+    {
+        TreeMap<String, Double> values = new TreeMap<String, Double>();
+        for (Map.Entry<String, LongAdder> e : counters.entrySet())
+        {
+            values.put(e.getKey(), (double) e.getValue().sum());
+        }
+        for (Map.Entry<String, Gauge> e : gauges.entrySet())
+        {
+            values.put(e.getKey(), e.getValue().value());
+        }
+        for (Map.Entry<String, Histogram> e : histograms.entrySet())
+        {
+            Histogram h = e.getValue();
+            values.put(e.getKey() + ".count", (double) h.count());
+            values.put(e.getKey() + ".mean", h.mean());
+            values.put(e.getKey() + ".p50", (double) h.percentile(0.5));
+            values.put(e.getKey() + ".p99", (double) h.percentile(0.99));
+            values.put(e.getKey() + ".max", (double) h.max());
+        }
+        return values;
+    }
+}
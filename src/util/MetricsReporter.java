@@ -0,0 +1,104 @@
+package util;
+
+import java.io.Closeable;
+import java.io.PrintStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Prints a snapshot of a metrics registry periodically on a background
+ * thread. Each counter is printed with its rate per second since the last
+ * report, e.g., game.steps as steps per second.
+ *
+ * @author agent
+ * @version 2026-10-17
+ *
+ */
+public class MetricsReporter implements Closeable
+{
+    private Metrics metrics;
+    private PrintStream out;
+    private ScheduledExecutorService timer;
+    private Map<String, Double> last;
+    private long lastNanos;
+
+    /**
+     * Constructor starts reporting.
+     *
+     * @param metrics
+     *            the registry.
+     * @param out
+     *            where to print the reports.
+     * @param periodMillis
+     *            the milliseconds between reports.
+     */
+    public MetricsReporter(Metrics metrics, PrintStream out,
+        long periodMillis)
+    {
+        this.metrics = metrics;
+        this.out = out;
+        last = new HashMap<String, Double>();
+        lastNanos = System.nanoTime();
+        timer = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactory()
+            {
+                @Override
+                public Thread newThread(Runnable r)
+                {
+                    Thread t = new Thread(r, "metrics-reporter");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        timer.scheduleAtFixedRate(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                report();
+            }
+        }, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Prints a report now.
+     */
+    public synchronized void report()
+    {
+        long now = System.nanoTime();
+        double seconds = (now - lastNanos) / 1e9;
+        Map<String, Double> values = metrics.snapshot();
+        StringBuilder report = new StringBuilder("metrics:");
+        for (Map.Entry<String, Double> e : values.entrySet())
+        {
+            String name = e.getKey();
+            double value = e.getValue();
+            // counts print as whole numbers, fractions and means do not
+            report.append(String.format((value == Math.rint(value))
+                ? "\n  %-30s %15.0f" : "\n  %-30s %15.4f", name, value));
+            if (metrics.isCounter(name))
+            {
+                Double before = last.get(name);
+                double delta = value - ((before == null) ? 0.0 : before);
+                report.append(String.format(" %15.0f/s", delta / seconds));
+            }
+        }
+        out.println(report);
+        last = values;
+        lastNanos = now;
+    }
+
+    /**
+     * Stops reporting and prints a last report.
+     */
+    @Override
+    public void close()
+    {
+        timer.shutdownNow();
+        report();
+    }
+}
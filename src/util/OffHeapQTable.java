@@ -0,0 +1,349 @@
+package util;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * A table of values map[s, a] kept off the heap, in direct buffers, for
+ * state spaces too large for QTable's arrays. Like QTable, each state id
+ * has a row with a slot for each action, but the rows are stored in chunks
+ * of CHUNK_SIZE states, with a bit per slot recording whether it has been
+ * written. A new chunk is allocated when the first of its states is
+ * written, so the table grows without copying, and it costs the garbage
+ * collector nothing however many entries it holds: an entry takes 8 bytes
+ * and a bit. Widening the rows for more actions does copy every chunk.
+ *
+ * It is usually indexed by a PackedStateIndex, which keeps its states off
+ * the heap too. It is for use by one thread at a time.
+ *
+ * @author agent
+ * @version 2026-10-17
+ *
+ */
+public class OffHeapQTable extends ValueTable
+{
+    // states per chunk
+    private static final int CHUNK_BITS = 16;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private int numActions;
+    private ByteBuffer[] values;
+    private ByteBuffer[] present;
+    private int numStates;
+
+    /**
+     * Constructor takes the index of states.
+     *
+     * @param states
+     *            the state index.
+     * @param numActions
+     *            the initial number of actions.
+     */
+    public OffHeapQTable(StateIndex states, int numActions)
+    {
+        super(states);
+        this.numActions = numActions;
+        values = new ByteBuffer[1];
+        present = new ByteBuffer[1];
+    }
+
+    /**
+     * Constructor copies another table into a new index that gives each of
+     * its states the same id.
+     *
+     * @param states
+     *            the state index.
+     * @param table
+     *            the table to copy.
+     */
+    public OffHeapQTable(StateIndex states, ValueTable table)
+    {
+        this(states, table.numActions());
+        int numIds = table.states().size();
+        for (int s = 0; s < numIds; s++)
+        {
+            for (int a = 0; a < numActions; a++)
+            {
+                if (table.contains(s, a))
+                {
+                    put(s, a, table.get(s, a));
+                }
+            }
+        }
+    }
+
+    /**
+     * Helper method allocates a zeroed direct buffer in native byte order.
+     *
+     * @param bytes
+     *            the size of the buffer.
+     * @return the buffer.
+     */
+    private static ByteBuffer allocate(int bytes)
+    {
+        return ByteBuffer.allocateDirect(bytes).order(ByteOrder.nativeOrder());
+    }
+
+    /**
+     * @return the number of actions per state.
+     */
+    @Override
+    public int numActions()
+    {
+        return numActions;
+    }
+
+    /**
+     * @return the number of states with at least one entry.
+     */
+    @Override
+    public int size()
+    {
+        return numStates;
+    }
+
+    /**
+     * @return the bytes of the table's off-heap chunks.
+     */
+    @Override
+    public long memoryBytes()
+    {
+        long bytes = 0;
+        for (int c = 0; c < values.length; c++)
+        {
+            if (values[c] != null)
+            {
+                bytes += values[c].capacity() + present[c].capacity();
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Widens each row to hold at least this many actions, copying every
+     * chunk.
+     *
+     * @param n
+     *            the number of actions.
+     * @throws IllegalStateException
+     *             if a chunk of rows would not fit in a buffer.
+     */
+    @Override
+    public void ensureActions(int n)
+    {
+        if (n <= numActions)
+        {
+            return;
+        }
+        if ((long) CHUNK_SIZE * n * 8 > Integer.MAX_VALUE)
+        {
+            throw new IllegalStateException("Table cannot hold " + n
+                + " actions");
+        }
+        for (int c = 0; c < values.length; c++)
+        {
+            if (values[c] != null)
+            {
+                ByteBuffer newValues = allocate(CHUNK_SIZE * n * 8);
+                ByteBuffer newPresent = allocate(CHUNK_SIZE * n / 8);
+                for (int row = 0; row < CHUNK_SIZE; row++)
+                {
+                    for (int a = 0; a < numActions; a++)
+                    {
+                        int i = row * numActions + a;
+                        int j = row * n + a;
+                        newValues.putDouble(8 * j, values[c].getDouble(8 * i));
+                        if (isSet(present[c], i))
+                        {
+                            set(newPresent, j);
+                        }
+                    }
+                }
+                values[c] = newValues;
+                present[c] = newPresent;
+            }
+        }
+        numActions = n;
+    }
+
+    /**
+     * Helper method allocates the chunk that holds this state id.
+     *
+     * @param s
+     *            the state id.
+     * @return the chunk.
+     */
+    private int ensureChunk(int s)
+    {
+        if (s < 0)
+        {
+            throw new IndexOutOfBoundsException("No state with id " + s);
+        }
+        int c = s >>> CHUNK_BITS;
+        if (c >= values.length)
+        {
+            int length = Math.max(2 * values.length, c + 1);
+            ByteBuffer[] newValues = new ByteBuffer[length];
+            ByteBuffer[] newPresent = new ByteBuffer[length];
+            System.arraycopy(values, 0, newValues, 0, values.length);
+            System.arraycopy(present, 0, newPresent, 0, present.length);
+            values = newValues;
+            present = newPresent;
+        }
+        if (values[c] == null)
+        {
+            values[c] = allocate(CHUNK_SIZE * numActions * 8);
+            present[c] = allocate(CHUNK_SIZE * numActions / 8);
+        }
+        return c;
+    }
+
+    /**
+     * Helper method tests a bit.
+     *
+     * @param bits
+     *            the bits.
+     * @param i
+     *            the index of the bit.
+     * @return true if the bit is set.
+     */
+    private static boolean isSet(ByteBuffer bits, int i)
+    {
+        return (bits.get(i >>> 3) & (1 << (i & 7))) != 0;
+    }
+
+    /**
+     * Helper method sets a bit.
+     *
+     * @param bits
+     *            the bits.
+     * @param i
+     *            the index of the bit.
+     */
+    private static void set(ByteBuffer bits, int i)
+    {
+        bits.put(i >>> 3, (byte) (bits.get(i >>> 3) | (1 << (i & 7))));
+    }
+
+    /**
+     * Return map[s, a].
+     *
+     * @param s
+     *            the state id.
+     * @param a
+     *            the action index.
+     * @return map[s, a], or 0.0 if it was never written.
+     */
+    @Override
+    public double get(int s, int a)
+    {
+        int c = s >>> CHUNK_BITS;
+        if (s < 0 || a < 0 || a >= numActions || c >= values.length
+            || values[c] == null)
+        {
+            return 0.0;
+        }
+        return values[c].getDouble(8 * ((s & (CHUNK_SIZE - 1)) * numActions
+            + a));
+    }
+
+    /**
+     * map[s, a] = v.
+     *
+     * @param s
+     *            the state id.
+     * @param a
+     *            the action index.
+     * @param v
+     *            the new value.
+     */
+    @Override
+    public void put(int s, int a, double v)
+    {
+        ensureActions(a + 1);
+        int c = ensureChunk(s);
+        int i = (s & (CHUNK_SIZE - 1)) * numActions + a;
+        mark(c, i);
+        values[c].putDouble(8 * i, v);
+    }
+
+    /**
+     * map[s, a] += v.
+     *
+     * @param s
+     *            the state id.
+     * @param a
+     *            the action index.
+     * @param v
+     *            the value to add.
+     */
+    @Override
+    public void add(int s, int a, double v)
+    {
+        ensureActions(a + 1);
+        int c = ensureChunk(s);
+        int i = (s & (CHUNK_SIZE - 1)) * numActions + a;
+        mark(c, i);
+        values[c].putDouble(8 * i, values[c].getDouble(8 * i) + v);
+    }
+
+    /**
+     * Helper method records that an entry has been written.
+     *
+     * @param c
+     *            the chunk.
+     * @param i
+     *            the position of the entry in the chunk.
+     */
+    private void mark(int c, int i)
+    {
+        ByteBuffer bits = present[c];
+        if (!isSet(bits, i))
+        {
+            int row = i - i % numActions;
+            boolean empty = true;
+            for (int j = row; j < row + numActions && empty; j++)
+            {
+                empty = !isSet(bits, j);
+            }
+            if (empty)
+            {
+                numStates++;
+            }
+            set(bits, i);
+        }
+    }
+
+    /**
+     * @param s
+     *            the state id.
+     * @param a
+     *            the action index.
+     * @return true if map[s, a] has been written.
+     */
+    @Override
+    public boolean contains(int s, int a)
+    {
+        int c = s >>> CHUNK_BITS;
+        return s >= 0 && a >= 0 && a < numActions && c < values.length
+            && values[c] != null
+            && isSet(present[c], (s & (CHUNK_SIZE - 1)) * numActions + a);
+    }
+
+    /**
+     * @param s
+     *            the state id.
+     * @return true if any map[s, a] has been written.
+     */
+    @Override
+    public boolean contains(int s)
+    {
+        for (int a = 0; a < numActions; a++)
+        {
+            if (contains(s, a))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,382 @@
+package util;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.AbstractList;
+import java.util.List;
+
+/**
+ * A state index for very large state spaces that keeps no state objects.
+ * Each state is packed into a long code by a learner's encodeState(), and
+ * the codes are kept off the heap, in direct buffers: an open-addressing
+ * hash table with linear probing maps a code to its id, and a column of
+ * codes, in chunks, maps an id back to its code. A state is decoded from
+ * its code by the learner's decodeState() when it is asked for, so the
+ * index costs the garbage collector nothing however many states it holds.
+ *
+ * The hash table holds id + 1 in each slot, so that a slot of a newly
+ * allocated, zeroed buffer is empty, and compares codes through the
+ * column, so a slot takes only 4 bytes. When the table is three quarters
+ * full it is doubled incrementally: the old table is kept and read until
+ * each insert has moved a few of its slots into the new one, so no single
+ * insert pays for copying the whole table.
+ *
+ * Every lookup takes a lock, so sharing the index between threads is safe,
+ * but they take turns for every lookup; like OffHeapQTable, it is in effect
+ * for use by one thread at a time.
+ *
+ * @author agent
+ * @version 2026-10-17
+ *
+ */
+public class PackedStateIndex extends StateIndex
+{
+    private static final int MIN_CAPACITY = 16;
+    // the most slots: a direct buffer holds less than 2^31 bytes
+    private static final int MAX_CAPACITY = 1 << 28;
+    // codes per chunk of the column
+    private static final int CHUNK_BITS = 16;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    // old slots moved into the new table by each insert while resizing
+    private static final int MOVES_PER_INSERT = 4;
+    private final QLearner learner;
+    private ByteBuffer table;
+    private int mask;
+    // the table being emptied into table while resizing, or null
+    private ByteBuffer old;
+    // the most bytes held at once, which is while resizing
+    private long peakBytes;
+    private int oldMask;
+    private int moved;
+    private ByteBuffer[] codes;
+    private volatile int size;
+
+    /**
+     * Constructor takes the learner that encodes and decodes the states and
+     * the number of states expected.
+     *
+     * @param learner
+     *            the learner.
+     * @param expectedStates
+     *            the number of states to make room for.
+     */
+    public PackedStateIndex(QLearner learner, int expectedStates)
+    {
+        this.learner = learner;
+        int capacity = MIN_CAPACITY;
+        while (capacity < MAX_CAPACITY && 3L * capacity < 4L * expectedStates)
+        {
+            capacity *= 2;
+        }
+        table = allocate(4L * capacity);
+        mask = capacity - 1;
+        codes = new ByteBuffer[Math.max(1,
+            (expectedStates + CHUNK_SIZE - 1) >>> CHUNK_BITS)];
+    }
+
+    /**
+     * Helper method allocates a zeroed direct buffer in native byte order.
+     *
+     * @param bytes
+     *            the size of the buffer.
+     * @return the buffer.
+     */
+    private static ByteBuffer allocate(long bytes)
+    {
+        return ByteBuffer.allocateDirect((int) bytes).order(
+            ByteOrder.nativeOrder());
+    }
+
+    /**
+     * Helper method spreads the bits of a code, so that codes that differ
+     * only in their high bits still land in different slots.
+     *
+     * @param code
+     *            the code.
+     * @return the hash of the code.
+     */
+    private static int hash(long code)
+    {
+        long h = code;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return (int) h;
+    }
+
+    /**
+     * Returns the code of the state with this id.
+     *
+     * @param id
+     *            the id of a state.
+     * @return the code of the state.
+     */
+    public long code(int id)
+    {
+        if (id < 0 || id >= size)
+        {
+            throw new IndexOutOfBoundsException("No state with id " + id);
+        }
+        return codes[id >>> CHUNK_BITS].getLong(8 * (id & (CHUNK_SIZE - 1)));
+    }
+
+    /**
+     * Helper method returns the code with this id, which must exist.
+     *
+     * @param id
+     *            the id of a state.
+     * @return the code of the state.
+     */
+    private long codeOf(int id)
+    {
+        return codes[id >>> CHUNK_BITS].getLong(8 * (id & (CHUNK_SIZE - 1)));
+    }
+
+    /**
+     * Helper method finds the slot of a code in a table.
+     *
+     * @param t
+     *            the table.
+     * @param m
+     *            the table's mask, its number of slots - 1.
+     * @param code
+     *            the code.
+     * @return the slot that holds the code, or the empty slot where it
+     *         would go, as -1 - slot.
+     */
+    private int slot(ByteBuffer t, int m, long code)
+    {
+        int i = hash(code) & m;
+        while (true)
+        {
+            int entry = t.getInt(4 * i);
+            if (entry == 0)
+            {
+                return -1 - i;
+            }
+            if (codeOf(entry - 1) == code)
+            {
+                return i;
+            }
+            i = (i + 1) & m;
+        }
+    }
+
+    /**
+     * Returns the id of a code without adding it.
+     *
+     * @param code
+     *            the code of a state.
+     * @return the id of the state, or -1 if it has not been interned.
+     */
+    public synchronized int findCode(long code)
+    {
+        int i = slot(table, mask, code);
+        if (i >= 0)
+        {
+            return table.getInt(4 * i) - 1;
+        }
+        if (old != null)
+        {
+            i = slot(old, oldMask, code);
+            if (i >= 0)
+            {
+                return old.getInt(4 * i) - 1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the id of a code, assigning the next id if it is new.
+     *
+     * @param code
+     *            the code of a state.
+     * @return the id of the state.
+     */
+    public synchronized int internCode(long code)
+    {
+        int id = findCode(code);
+        if (id >= 0)
+        {
+            return id;
+        }
+        if (old != null)
+        {
+            move(MOVES_PER_INSERT);
+        }
+        else if (4L * (size + 1) > 3L * (mask + 1L))
+        {
+            grow();
+        }
+        id = size;
+        int chunk = id >>> CHUNK_BITS;
+        if (chunk == codes.length)
+        {
+            ByteBuffer[] newCodes = new ByteBuffer[2 * codes.length];
+            System.arraycopy(codes, 0, newCodes, 0, codes.length);
+            codes = newCodes;
+        }
+        if (codes[chunk] == null)
+        {
+            codes[chunk] = allocate(8L * CHUNK_SIZE);
+        }
+        codes[chunk].putLong(8 * (id & (CHUNK_SIZE - 1)), code);
+        table.putInt(4 * (-1 - slot(table, mask, code)), id + 1);
+        size = id + 1;
+        return id;
+    }
+
+    /**
+     * Helper method starts moving the slots into a table twice the size.
+     */
+    private void grow()
+    {
+        if (mask + 1 == MAX_CAPACITY)
+        {
+            throw new IllegalStateException("Index is full at " + size
+                + " states");
+        }
+        old = table;
+        oldMask = mask;
+        moved = 0;
+        mask = 2 * mask + 1;
+        table = allocate(4L * (mask + 1));
+        peakBytes = Math.max(peakBytes, memoryBytes());
+        move(MOVES_PER_INSERT);
+    }
+
+    /**
+     * Helper method moves some of the old table's slots into the new table,
+     * and drops the old table once they have all moved. The old table has
+     * moved by the time the new one is half full, long before it needs to
+     * grow again.
+     *
+     * @param count
+     *            the number of slots to move.
+     */
+    private void move(int count)
+    {
+        int end = Math.min(oldMask + 1, moved + count);
+        for (; moved < end; moved++)
+        {
+            int entry = old.getInt(4 * moved);
+            if (entry != 0)
+            {
+                table.putInt(4 * (-1 - slot(table, mask, codeOf(entry - 1))),
+                    entry);
+            }
+        }
+        if (moved > oldMask)
+        {
+            old = null;
+        }
+    }
+
+    /**
+     * Returns the id of the state, assigning the next id if it is new.
+     *
+     * @param s
+     *            the state.
+     * @return the id of the state.
+     */
+    @Override
+    public int intern(State s)
+    {
+        return internCode(learner.encodeState(s));
+    }
+
+    /**
+     * Returns the id of the state without adding it.
+     *
+     * @param s
+     *            the state.
+     * @return the id of the state, or -1 if it has not been interned.
+     */
+    @Override
+    public int find(Object s)
+    {
+        return (s instanceof State) ? findCode(learner.encodeState((State) s))
+            : -1;
+    }
+
+    /**
+     * @param id
+     *            the id of a state.
+     * @return the state with this id, decoded from its code.
+     */
+    @Override
+    public State get(int id)
+    {
+        return learner.decodeState(code(id));
+    }
+
+    /**
+     * @return the number of states interned.
+     */
+    @Override
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * @return the interned states in order of their ids, decoded when each
+     *         is retrieved.
+     */
+    @Override
+    public List<State> states()
+    {
+        final int n = size;
+        return new AbstractList<State>()
+        {
+            @Override
+            public State get(int id)
+            {
+                if (id >= n)
+                {
+                    throw new IndexOutOfBoundsException("No state with id "
+                        + id);
+                }
+                return PackedStateIndex.this.get(id);
+            }
+
+            @Override
+            public int size()
+            {
+                return n;
+            }
+        };
+    }
+
+    /**
+     * @return the bytes of the off-heap table and column.
+     */
+    public synchronized long memoryBytes()
+    {
+        long bytes = table.capacity();
+        if (old != null)
+        {
+            bytes += old.capacity();
+        }
+        for (ByteBuffer chunk : codes)
+        {
+            if (chunk != null)
+            {
+                bytes += chunk.capacity();
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * @return the most bytes the off-heap table and column have held at
+     *         once, which includes the old and new tables while resizing.
+     */
+    public synchronized long peakMemoryBytes()
+    {
+        return Math.max(peakBytes, memoryBytes());
+    }
+}
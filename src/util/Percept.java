@@ -12,8 +12,13 @@ import java.util.List;
 public class Percept
 {
     public static final int NEIGHBORHOOD_SIZE = 5;
+    private MarkovDecisionProcess mdp;
     private GridCell[][] neighborhood;
-    private List<String> actions;
+    // the index of the current state, and whether the neighborhood has been
+    // looked up since the last move
+    private int index;
+    private boolean looked;
+    private ActionSpace actions;
     private double gamma;
     private double score;
 
@@ -26,30 +31,128 @@ public class Percept
      *            the current grid cell.
      * @param score
      *            the current score.
+     * @throws IllegalArgumentException
+     *             if the grid cell is not a state of the MDP.
      */
     public Percept(MarkovDecisionProcess mdp, GridCell current, double score)
     {
-        actions = mdp.getActions();
-        gamma = mdp.getGamma();
+        this(mdp, indexOf(mdp, current), score);
+    }
+
+    /**
+     * Helper method finds the index of a grid cell in the MDP.
+     * 
+     * @param mdp
+     *            the MDP.
+     * @param cell
+     *            the grid cell.
+     * @return the index of the grid cell.
+     * @throws IllegalArgumentException
+     *             if the grid cell is not a state of the MDP.
+     */
+    private static int indexOf(MarkovDecisionProcess mdp, GridCell cell)
+    {
+        int index = mdp.indexOf(cell);
+        if (index < 0)
+        {
+            throw new IllegalArgumentException("Unknown state " + cell);
+        }
+        return index;
+    }
+
+    /**
+     * Constructor for a percept centered on a state of the MDP.
+     * 
+     * @param mdp
+     *            the MDP.
+     * @param index
+     *            the index of the current state in the MDP.
+     * @param score
+     *            the current score.
+     */
+    public Percept(MarkovDecisionProcess mdp, int index, double score)
+    {
+        this(mdp, mdp.rowOf(index), mdp.colOf(index), score);
+    }
+
+    /**
+     * Constructor for a percept centered on a grid location.
+     * 
+     * @param mdp
+     *            the MDP.
+     * @param row
+     *            the row index of the current grid cell.
+     * @param col
+     *            the column index of the current grid cell.
+     * @param score
+     *            the current score.
+     */
+    private Percept(MarkovDecisionProcess mdp, int row, int col, double score)
+    {
+        this(mdp);
         this.score = score;
+        index = mdp.indexOf(row, col);
+        look(row, col);
+        looked = true;
+    }
+
+    /**
+     * Constructor for a percept that is reused for each step of an episode
+     * by calling moveTo. It is only valid until the next move. The
+     * neighborhood is only looked up if it is asked for, e.g., by a learner
+     * that has not seen the current state before.
+     * 
+     * @param mdp
+     *            the MDP.
+     */
+    Percept(MarkovDecisionProcess mdp)
+    {
+        this.mdp = mdp;
+        actions = mdp.getActionSpace();
+        gamma = mdp.getGamma();
         neighborhood = new GridCell[NEIGHBORHOOD_SIZE][NEIGHBORHOOD_SIZE];
+    }
 
-        String name = current.name();
-        int row = GridWorld.nameToRow(name) - NEIGHBORHOOD_SIZE / 2;
-        int col = GridWorld.nameToCol(name) - NEIGHBORHOOD_SIZE / 2;
+    /**
+     * Centers a reused percept on another state of the MDP.
+     * 
+     * @param index
+     *            the index of the current state in the MDP.
+     * @param score
+     *            the current score.
+     */
+    void moveTo(int index, double score)
+    {
+        this.score = score;
+        this.index = index;
+        looked = false;
+    }
 
+    /**
+     * Helper method looks up each grid cell in the neighborhood of a grid
+     * location by its row and column.
+     * 
+     * @param row
+     *            the row index of the current grid cell.
+     * @param col
+     *            the column index of the current grid cell.
+     */
+    private void look(int row, int col)
+    {
+        row -= NEIGHBORHOOD_SIZE / 2;
+        col -= NEIGHBORHOOD_SIZE / 2;
         for (int i = 0; i < NEIGHBORHOOD_SIZE; i++)
         {
-            int r = row + i;
             for (int j = 0; j < NEIGHBORHOOD_SIZE; j++)
             {
-                int c = col + j;
-                String targetName = GridWorld.rowColToName(r, c);
-                int index =
-                    mdp.getStates().indexOf(new GridCell(targetName, 0));
-                if (index >= 0)
+                int index = mdp.indexOf(row + i, col + j);
+                if (index < 0)
+                {
+                    neighborhood[i][j] = null;
+                }
+                else
                 {
-                    neighborhood[i][j] = mdp.getStates().get(index);
+                    neighborhood[i][j] = mdp.getState(index);
                 }
             }
         }
@@ -59,6 +162,14 @@ public class Percept
      * @return the possible actions.
      */
     public List<String> actions()
+    {
+        return actions.names();
+    }
+
+    /**
+     * @return the possible actions, by index.
+     */
+    public ActionSpace actionSpace()
     {
         return actions;
     }
@@ -68,6 +179,11 @@ public class Percept
      */
     public GridCell[][] neighborhood()
     {
+        if (!looked)
+        {
+            look(mdp.rowOf(index), mdp.colOf(index));
+            looked = true;
+        }
         return neighborhood;
     }
 
@@ -76,7 +192,57 @@ public class Percept
      */
     public GridCell current()
     {
-        return neighborhood[NEIGHBORHOOD_SIZE / 2][NEIGHBORHOOD_SIZE / 2];
+        return (index < 0) ? null : mdp.getState(index);
+    }
+
+    /**
+     * @return the reward for the current grid cell.
+     */
+    public double reward()
+    {
+        return mdp.reward(index);
+    }
+
+    /**
+     * @return true if the current grid cell is a terminal state.
+     */
+    public boolean isTerminal()
+    {
+        return mdp.isTerminal(index);
+    }
+
+    /**
+     * Returns the type of a grid cell in the neighborhood without making its
+     * GridCell.
+     * 
+     * @param dRow
+     *            the row of the cell relative to the current one.
+     * @param dCol
+     *            the column of the cell relative to the current one.
+     * @return GridCell.GOAL, HOLE, NORMAL or OTHER, or -1 if there is no
+     *         cell there.
+     */
+    public int type(int dRow, int dCol)
+    {
+        int cell = mdp.indexOf(mdp.rowOf(index) + dRow,
+            mdp.colOf(index) + dCol);
+        return (cell < 0) ? -1 : mdp.cellType(cell);
+    }
+
+    /**
+     * @return the index of the current state in the MDP.
+     */
+    public int index()
+    {
+        return index;
+    }
+
+    /**
+     * @return the MDP.
+     */
+    MarkovDecisionProcess mdp()
+    {
+        return mdp;
     }
 
     /**
@@ -0,0 +1,516 @@
+package util;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Solves an MDP exactly by value iteration or modified policy iteration on
+ * its sparse transition model. The utilities satisfy
+ *
+ * <pre>
+ * U(s) = R(s) + gamma * max_a sum_s' P(s'|s, a) U(s')
+ * </pre>
+ *
+ * with U(s) = R(s) for terminal states, as the Q-learner's utilities do.
+ *
+ * Each sweep splits the states into blocks that are updated in parallel on a
+ * fork/join pool. By default a sweep reads the utilities of the last sweep
+ * and writes new ones to a second array (Jacobi), so the result does not
+ * depend on how the blocks are scheduled. Optionally the utilities are
+ * updated in place (Gauss-Seidel), alternating forward and backward sweeps
+ * so values spread both ways across the grid; that usually takes fewer
+ * sweeps, but a block may see a neighboring block's utilities from before
+ * or after their update in the same sweep, so the exact values and sweep
+ * count vary from run to run. Iteration stops when the largest change in a
+ * sweep that maximizes over actions is below the tolerance, or after
+ * maxSweeps sweeps.
+ *
+ * With gamma = 1 the utilities only converge if every state can reach a
+ * terminal state, so such an MDP is rejected.
+ *
+ * @author agent
+ * @version 2026-10-17
+ *
+ */
+public class Planner
+{
+    private static final int BLOCK_SIZE = 4096;
+    private MarkovDecisionProcess mdp;
+    private TransitionModel transitions;
+    private double tolerance;
+    private int maxSweeps;
+    private ForkJoinPool pool;
+    private int numStates;
+    private int numActions;
+    private double gamma;
+    private double[] reward;
+    private boolean[] terminal;
+    private boolean inPlace;
+    private double[] utility;
+    private double[] next;
+    private int[] policy;
+    private int sweeps;
+    private double residual;
+
+    /**
+     * Constructor takes the MDP and when to stop. Sweeps are deterministic.
+     *
+     * @param mdp
+     *            the MDP to solve.
+     * @param tolerance
+     *            stop when no utility changes by more than this in a sweep.
+     * @param maxSweeps
+     *            stop after this many sweeps regardless.
+     * @param pool
+     *            the fork/join pool for the sweeps.
+     * @throws IllegalArgumentException
+     *             if gamma is 1 and some state cannot reach a terminal.
+     */
+    public Planner(MarkovDecisionProcess mdp, double tolerance, int maxSweeps,
+        ForkJoinPool pool)
+    {
+        this(mdp, tolerance, maxSweeps, pool, false);
+    }
+
+    /**
+     * Constructor takes the MDP, when to stop, and whether to update the
+     * utilities in place.
+     *
+     * @param mdp
+     *            the MDP to solve.
+     * @param tolerance
+     *            stop when no utility changes by more than this in a sweep.
+     * @param maxSweeps
+     *            stop after this many sweeps regardless.
+     * @param pool
+     *            the fork/join pool for the sweeps.
+     * @param inPlace
+     *            true for in-place sweeps, whose results vary with the
+     *            scheduling of the blocks.
+     * @throws IllegalArgumentException
+     *             if gamma is 1 and some state cannot reach a terminal.
+     */
+    public Planner(MarkovDecisionProcess mdp, double tolerance, int maxSweeps,
+        ForkJoinPool pool, boolean inPlace)
+    {
+        if (maxSweeps <= 0)
+        {
+            throw new IllegalArgumentException("maxSweeps must be positive");
+        }
+        this.mdp = mdp;
+        this.tolerance = tolerance;
+        this.maxSweeps = maxSweeps;
+        this.pool = pool;
+        this.inPlace = inPlace;
+        transitions = mdp.getTransitions();
+        numStates = transitions.numStates();
+        numActions = transitions.numActions();
+        gamma = mdp.getGamma();
+        reward = new double[numStates];
+        terminal = new boolean[numStates];
+        for (int s = 0; s < numStates; s++)
+        {
+            reward[s] = mdp.reward(s);
+            terminal[s] = mdp.isTerminal(s);
+        }
+        if (gamma >= 1.0)
+        {
+            int s = unableToTerminate();
+            if (s >= 0)
+            {
+                throw new IllegalArgumentException("With gamma " + gamma
+                    + ", state " + mdp.getStates().get(s)
+                    + " cannot reach a terminal state");
+            }
+        }
+        utility = new double[numStates];
+        next = inPlace ? utility : new double[numStates];
+        policy = new int[numStates];
+        reset();
+    }
+
+    /**
+     * Helper method searches backward from the terminal states along the
+     * transitions with positive probability.
+     *
+     * @return a state that cannot reach a terminal state, or -1 if there is
+     *         none.
+     */
+    private int unableToTerminate()
+    {
+        // the predecessors of each state, grouped by successor
+        int[] start = new int[numStates + 1];
+        for (int k = 0; k < transitions.numTransitions(); k++)
+        {
+            if (transitions.probability(k) > 0.0)
+            {
+                start[transitions.successor(k) + 1]++;
+            }
+        }
+        for (int s = 0; s < numStates; s++)
+        {
+            start[s + 1] += start[s];
+        }
+        int[] fill = start.clone();
+        int[] predecessors = new int[start[numStates]];
+        for (int s = 0; s < numStates; s++)
+        {
+            for (int a = 0; a < numActions; a++)
+            {
+                int end = transitions.end(s, a);
+                for (int k = transitions.first(s, a); k < end; k++)
+                {
+                    if (transitions.probability(k) > 0.0)
+                    {
+                        predecessors[fill[transitions.successor(k)]++] = s;
+                    }
+                }
+            }
+        }
+        boolean[] reaches = new boolean[numStates];
+        int[] queue = new int[numStates];
+        int tail = 0;
+        for (int s = 0; s < numStates; s++)
+        {
+            if (terminal[s])
+            {
+                reaches[s] = true;
+                queue[tail++] = s;
+            }
+        }
+        for (int head = 0; head < tail; head++)
+        {
+            int s = queue[head];
+            for (int i = start[s]; i < start[s + 1]; i++)
+            {
+                if (!reaches[predecessors[i]])
+                {
+                    reaches[predecessors[i]] = true;
+                    queue[tail++] = predecessors[i];
+                }
+            }
+        }
+        for (int s = 0; s < numStates; s++)
+        {
+            if (!reaches[s])
+            {
+                return s;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Starts over from zero utilities and the first action everywhere.
+     */
+    public void reset()
+    {
+        for (int s = 0; s < numStates; s++)
+        {
+            utility[s] = terminal[s] ? reward[s] : 0.0;
+            next[s] = utility[s];
+            policy[s] = terminal[s] ? -1 : 0;
+        }
+        sweeps = 0;
+        residual = Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Runs value iteration until the residual is below the tolerance.
+     *
+     * @return the number of sweeps.
+     */
+    public int valueIteration()
+    {
+        reset();
+        while (sweeps < maxSweeps)
+        {
+            residual = sweep(true);
+            if (residual < tolerance)
+            {
+                break;
+            }
+        }
+        return sweeps;
+    }
+
+    /**
+     * Runs modified policy iteration: each improvement sweep picks the best
+     * action for every state, then a few evaluation sweeps update the
+     * utilities under that policy without maximizing. Stops when the
+     * residual of an improvement sweep is below the tolerance.
+     *
+     * @param evaluationSweeps
+     *            the number of evaluation sweeps per improvement.
+     * @return the number of sweeps, of both kinds.
+     */
+    public int policyIteration(int evaluationSweeps)
+    {
+        reset();
+        while (sweeps < maxSweeps)
+        {
+            residual = sweep(true);
+            if (residual < tolerance)
+            {
+                break;
+            }
+            for (int k = 0; k < evaluationSweeps && sweeps < maxSweeps; k++)
+            {
+                if (sweep(false) < tolerance)
+                {
+                    break;
+                }
+            }
+        }
+        return sweeps;
+    }
+
+    /**
+     * Helper method updates every state once.
+     *
+     * @param improve
+     *            true to maximize over actions, false to follow the policy.
+     * @return the largest change in utility.
+     */
+    private double sweep(boolean improve)
+    {
+        boolean forward = sweeps % 2 == 0;
+        sweeps++;
+        double change = pool.invoke(new SweepTask(0, numStates, forward,
+            improve));
+        double[] last = utility;
+        utility = next;
+        next = last;
+        return change;
+    }
+
+    /**
+     * Fork/join task that splits a range of states in half until it is a
+     * block small enough to sweep on one thread.
+     */
+    private class SweepTask extends RecursiveTask<Double>
+    {
+        private static final long serialVersionUID = 1L;
+        private int lo;
+        private int hi;
+        private boolean forward;
+        private boolean improve;
+
+        /**
+         * Constructor takes the range of states to update.
+         *
+         * @param lo
+         *            the first state.
+         * @param hi
+         *            one past the last state.
+         * @param forward
+         *            true to update the states in increasing order.
+         * @param improve
+         *            true to maximize over actions.
+         */
+        SweepTask(int lo, int hi, boolean forward, boolean improve)
+        {
+            this.lo = lo;
+            this.hi = hi;
+            this.forward = forward;
+            this.improve = improve;
+        }
+
+        @Override
+        protected Double compute()
+        {
+            if (hi - lo <= BLOCK_SIZE)
+            {
+                return sweepBlock(lo, hi, forward, improve);
+            }
+            int mid = (lo + hi) >>> 1;
+            SweepTask left = new SweepTask(lo, mid, forward, improve);
+            left.fork();
+            double right = new SweepTask(mid, hi, forward, improve).compute();
+            return Math.max(left.join(), right);
+        }
+    }
+
+    /**
+     * Helper method updates a block of states, writing the new utilities to
+     * next, which is the utility array itself when updating in place.
+     *
+     * @param lo
+     *            the first state.
+     * @param hi
+     *            one past the last state.
+     * @param forward
+     *            true to update the states in increasing order.
+     * @param improve
+     *            true to maximize over actions.
+     * @return the largest change in utility.
+     */
+    private double sweepBlock(int lo, int hi, boolean forward,
+        boolean improve)
+    {
+        double change = 0.0;
+        for (int i = lo; i < hi; i++)
+        {
+            int s = forward ? i : lo + hi - 1 - i;
+            if (terminal[s])
+            {
+                continue;
+            }
+            // keep the current action unless another is strictly better, so
+            // the policy settles.
+            int best = policy[s];
+            double bestValue = expectedUtility(s, best);
+            if (improve)
+            {
+                for (int a = 0; a < numActions; a++)
+                {
+                    double value = expectedUtility(s, a);
+                    if (value > bestValue)
+                    {
+                        best = a;
+                        bestValue = value;
+                    }
+                }
+                policy[s] = best;
+            }
+            double u = reward[s] + gamma * bestValue;
+            change = Math.max(change, Math.abs(u - utility[s]));
+            next[s] = u;
+        }
+        return change;
+    }
+
+    /**
+     * @param s
+     *            the state.
+     * @param a
+     *            the action.
+     * @return sum_s' P(s'|s, a) U(s').
+     */
+    private double expectedUtility(int s, int a)
+    {
+        double sum = 0.0;
+        int end = transitions.end(s, a);
+        for (int k = transitions.first(s, a); k < end; k++)
+        {
+            sum += transitions.probability(k)
+                * utility[transitions.successor(k)];
+        }
+        return sum;
+    }
+
+    /**
+     * @return the number of sweeps in the last solve.
+     */
+    public int getSweeps()
+    {
+        return sweeps;
+    }
+
+    /**
+     * @return the largest change in the last improvement sweep.
+     */
+    public double getResidual()
+    {
+        return residual;
+    }
+
+    /**
+     * @param s
+     *            the index of a state.
+     * @return its utility.
+     */
+    public double utility(int s)
+    {
+        return utility[s];
+    }
+
+    /**
+     * @param s
+     *            the index of a state.
+     * @return the index of its best action, or -1 for a terminal state.
+     */
+    public int action(int s)
+    {
+        return policy[s];
+    }
+
+    /**
+     * Return U[s] for each grid cell.
+     *
+     * @return U[s]
+     */
+    public HashMap<GridCell, Double> getUtility()
+    {
+        List<GridCell> states = mdp.getStates();
+        HashMap<GridCell, Double> value = new HashMap<GridCell, Double>();
+        for (int s = 0; s < numStates; s++)
+        {
+            value.put(states.get(s), utility[s]);
+        }
+        return value;
+    }
+
+    /**
+     * Return Pi[s] for each grid cell, null for terminal states.
+     *
+     * @return Pi[s]
+     */
+    public HashMap<GridCell, String> getPolicy()
+    {
+        List<GridCell> states = mdp.getStates();
+        ActionSpace actions = mdp.getActionSpace();
+        HashMap<GridCell, String> value = new HashMap<GridCell, String>();
+        for (int s = 0; s < numStates; s++)
+        {
+            value.put(states.get(s),
+                (policy[s] < 0) ? null : actions.name(policy[s]));
+        }
+        return value;
+    }
+
+    /**
+     * Solves a random world with both methods and reports how long each
+     * took. Small worlds are displayed with their utilities and policy.
+     *
+     * @param args
+     *            optional number of rows and columns, number of holes,
+     *            tolerance, and "inplace" for in-place sweeps.
+     */
+    public static void main(String[] args)
+    {
+        int size = (args.length > 0) ? Integer.parseInt(args[0]) : 500;
+        int numHoles = (args.length > 1) ? Integer.parseInt(args[1])
+            : size * size / 10;
+        double tolerance = (args.length > 2) ? Double.parseDouble(args[2])
+            : 1e-6;
+        String world = new GridWorldBuilder(1L).createRandomGridWorld(size,
+            size, 0, 2, numHoles, 1, 1.0);
+        MarkovDecisionProcess mdp = new WorldLoader().load(world, 1L);
+        boolean inPlace = args.length > 3 && args[3].equals("inplace");
+        Planner planner = new Planner(mdp, tolerance, 100000,
+            ForkJoinPool.commonPool(), inPlace);
+
+        long start = System.nanoTime();
+        planner.valueIteration();
+        System.out.printf("Value iteration: %d sweeps, residual %.2g, "
+            + "%.2f s\n", planner.getSweeps(), planner.getResidual(),
+            (System.nanoTime() - start) / 1e9);
+
+        start = System.nanoTime();
+        planner.policyIteration(10);
+        System.out.printf("Policy iteration: %d sweeps, residual %.2g, "
+            + "%.2f s\n", planner.getSweeps(), planner.getResidual(),
+            (System.nanoTime() - start) / 1e9);
+        System.out.printf("Utility of the start: %.4f\n",
+            planner.utility(mdp.getCurrentIndex()));
+
+        if (size <= 20)
+        {
+            GridWorld.display(mdp, planner.getUtility());
+            GridWorld.display(mdp, planner.getPolicy());
+        }
+    }
+}
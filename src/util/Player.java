@@ -37,4 +37,18 @@ public abstract class Player
      * @return the desired action.
      */
     public abstract String play(Percept percept);
+
+    /**
+     * Returns the index of the desired action for the current state of the
+     * MDP. By default this looks up the action returned by play; players
+     * that choose actions by index should override it.
+     * 
+     * @param percept
+     *            the percept.
+     * @return the index of the desired action, or -1 if it is not an action.
+     */
+    public int playAction(Percept percept)
+    {
+        return percept.actionSpace().indexOf(play(percept));
+    }
 }
@@ -1,7 +1,11 @@
 package util;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
 
 import skeleton.MyState;
@@ -12,11 +16,24 @@ import skeleton.MyState;
  * @version 2016-04-27
  *
  */
-public abstract class QLearner extends Player
+public abstract class QLearner extends Player implements Cloneable
 {
-    protected HashMap<State, HashMap<String, Double>> q;
-    protected HashMap<State, HashMap<String, Double>> n;
+    protected StateIndex states;
+    protected ValueTable q;
+    protected ValueTable n;
+    private ArrayList<String> actionNames;
+    private HashMap<String, Integer> actionIds;
+    private ActionSpace actionSpace;
     private Random rand;
+    // choices counted since the last flush into the metrics, if any
+    private static final int FLUSH_EVERY = 1024;
+    private Metrics metrics;
+    private long exploratory;
+    private long greedy;
+    // the state id of each cell of the world last played, or -1 until the
+    // cell is visited; lanes share it, since a cell's id is the same for all
+    private int[] cellStates;
+    private long cellWorld;
 
     /**
      * The constructor.
@@ -25,27 +42,426 @@ public abstract class QLearner extends Player
      *            the name
      */
     public QLearner(String name)
+    {
+        this(name, 1L);
+    }
+
+    /**
+     * The constructor.
+     * 
+     * @param name
+     *            the name
+     * @param seed
+     *            the seed for breaking ties between actions
+     */
+    public QLearner(String name, long seed)
     {
         super(name);
-        q = new HashMap<State, HashMap<String, Double>>();
-        n = new HashMap<State, HashMap<String, Double>>();
-        rand = new Random(1);
+        states = new HashStateIndex();
+        q = new QTable(states, 0);
+        n = new QTable(states, 0);
+        actionNames = new ArrayList<String>();
+        actionIds = new HashMap<String, Integer>();
+        rand = new Random(seed);
+    }
+
+    /**
+     * Returns a learner that shares this learner's states and Q and N tables
+     * but has its own memory of the episode in progress, so that several
+     * episodes can be learned at once, e.g., by BatchGame. Call it between
+     * episodes. Subclasses that remember the episode in mutable objects
+     * must copy them.
+     * 
+     * @return the new learner.
+     */
+    public QLearner lane()
+    {
+        try
+        {
+            QLearner lane = (QLearner) clone();
+            lane.exploratory = 0;
+            lane.greedy = 0;
+            return lane;
+        }
+        catch (CloneNotSupportedException e)
+        {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Returns a lane, as lane() does, that breaks ties with its own random
+     * number generator, so lanes can run on separate threads.
+     * 
+     * @param seed
+     *            the seed for breaking ties between actions
+     * @return the new learner.
+     */
+    public QLearner lane(long seed)
+    {
+        QLearner lane = lane();
+        lane.rand = new Random(seed);
+        return lane;
+    }
+
+    /**
+     * Moves Q and N into tables that several threads can update at once,
+     * e.g., lanes on separate threads. Call it before making the lanes, once
+     * the learner knows its actions.
+     * 
+     * @param capacity
+     *            the most states the tables must hold.
+     * @param racy
+     *            true for Hogwild updates that may lose a concurrent add.
+     */
+    public void useConcurrentTables(int capacity, boolean racy)
+    {
+        q = new ConcurrentQTable(q, capacity, racy);
+        n = new ConcurrentQTable(n, capacity, racy);
     }
 
     /**
-     * @return Q[s,a]
+     * Moves Q and N back into QTables, which grow as new states are seen,
+     * e.g., once the lanes using concurrent tables are done. Each state
+     * keeps its id. Call it between episodes.
      */
-    public HashMap<State, HashMap<String, Double>> getQ()
+    public void useGrowableTables()
     {
-        return q;
+        q = new QTable(q);
+        n = new QTable(n);
     }
 
     /**
-     * @return N[s,a]
+     * Moves the states and the Q and N tables off the heap, into a
+     * PackedStateIndex and OffHeapQTables, for state spaces with millions
+     * of states. The learner must encode its states; each state keeps its
+     * id. Call it between episodes.
+     *
+     * @param expectedStates
+     *            the number of states to make room for.
+     * @throws UnsupportedOperationException
+     *             if the learner cannot encode its states.
      */
-    public HashMap<State, HashMap<String, Double>> getN()
+    public void useOffHeapTables(int expectedStates)
     {
-        return n;
+        PackedStateIndex index = new PackedStateIndex(this,
+            Math.max(expectedStates, states.size()));
+        int numIds = states.size();
+        for (int s = 0; s < numIds; s++)
+        {
+            index.intern(states.get(s));
+        }
+        q = new OffHeapQTable(index, q);
+        n = new OffHeapQTable(index, n);
+        // each state keeps its id, so the cells' cached ids still hold
+        states = index;
+    }
+
+    /**
+     * Records into a metrics registry whether each action this learner, and
+     * lanes made from it afterwards, choose is exploratory, i.e., chosen for
+     * an exploration function above its Q value, or greedy, and registers
+     * gauges for the number of states and the size of the tables. Choices
+     * are counted locally and added to the registry every FLUSH_EVERY
+     * choices, or by flushMetrics.
+     * 
+     * @param metrics
+     *            the registry, or null to stop recording.
+     */
+    public void setMetrics(Metrics metrics)
+    {
+        flushMetrics();
+        this.metrics = metrics;
+        if (metrics != null)
+        {
+            metrics.gauge(Metrics.STATES, new Metrics.Gauge()
+            {
+                @Override
+                public double value()
+                {
+                    return states.size();
+                }
+            });
+            metrics.gauge(Metrics.TABLE_BYTES, new Metrics.Gauge()
+            {
+                @Override
+                public double value()
+                {
+                    return q.memoryBytes() + n.memoryBytes();
+                }
+            });
+        }
+    }
+
+    /**
+     * Adds the choices counted since the last flush to the metrics registry.
+     */
+    public void flushMetrics()
+    {
+        if (metrics != null)
+        {
+            metrics.recordActions(exploratory, greedy);
+        }
+        exploratory = 0;
+        greedy = 0;
+    }
+
+    /**
+     * Helper method counts a choice of action.
+     * 
+     * @param explored
+     *            true if the action was chosen for exploration.
+     */
+    private void countChoice(boolean explored)
+    {
+        if (explored)
+        {
+            exploratory++;
+        }
+        else
+        {
+            greedy++;
+        }
+        if (exploratory + greedy == FLUSH_EVERY)
+        {
+            flushMetrics();
+        }
+    }
+
+    /**
+     * Replaces the states and the Q and N tables, e.g., with ones restored
+     * from a checkpoint. Call it between episodes.
+     * 
+     * @param states
+     *            the state index.
+     * @param q
+     *            Q[s,a], indexed by the state index.
+     * @param n
+     *            N[s,a], indexed by the state index.
+     */
+    void useTables(StateIndex states, ValueTable q, ValueTable n)
+    {
+        this.states = states;
+        this.q = q;
+        this.n = n;
+        // the ids of the cells' states are different in the new tables
+        cellStates = null;
+    }
+
+    /**
+     * @return the names of the learned actions, by index.
+     */
+    public List<String> getActions()
+    {
+        return Collections.unmodifiableList(actionNames);
+    }
+
+    /**
+     * Encodes a state as a number, so that checkpoints can store it. Learners
+     * whose states can be packed override this and decodeState.
+     * 
+     * @param state
+     *            the state
+     * @return the code for the state
+     * @throws UnsupportedOperationException
+     *             if the learner cannot encode its states.
+     */
+    protected long encodeState(State state)
+    {
+        throw new UnsupportedOperationException(getClass().getName()
+            + " cannot encode its states");
+    }
+
+    /**
+     * Decodes a state encoded by encodeState.
+     * 
+     * @param code
+     *            the code for the state
+     * @return the state
+     * @throws UnsupportedOperationException
+     *             if the learner cannot encode its states.
+     */
+    protected State decodeState(long code)
+    {
+        throw new UnsupportedOperationException(getClass().getName()
+            + " cannot decode its states");
+    }
+
+    /**
+     * @return a read-only view of Q[s,a]
+     */
+    public Map<State, Map<String, Double>> getQ()
+    {
+        return q.asMap(Collections.unmodifiableList(actionNames));
+    }
+
+    /**
+     * @return a read-only view of N[s,a]
+     */
+    public Map<State, Map<String, Double>> getN()
+    {
+        return n.asMap(Collections.unmodifiableList(actionNames));
+    }
+
+    /**
+     * Returns the id of the state in the Q and N tables, adding it if it is
+     * new.
+     * 
+     * @param s
+     *            the state
+     * @return the state id
+     */
+    protected int stateId(State s)
+    {
+        return states.intern(s);
+    }
+
+    /**
+     * Returns the id of the state the learner perceives, adding it if it is
+     * new. The state depends only on the current cell, so its id is cached
+     * by the cell's index, and the percept is only looked at the first time
+     * the cell is visited, until the world is read again.
+     * 
+     * @param p
+     *            the percept
+     * @return the state id
+     */
+    protected int stateId(Percept p)
+    {
+        int[] ids = cellStates(p.mdp());
+        int cell = p.index();
+        int id = ids[cell];
+        if (id < 0)
+        {
+            id = stateId(stateOf(p));
+            ids[cell] = id;
+        }
+        return id;
+    }
+
+    /**
+     * Returns the id of the state of a cell of the MDP without adding it.
+     * 
+     * @param mdp
+     *            the MDP
+     * @param cell
+     *            the index of the cell in the MDP
+     * @return the state id, or -1 if the state has not been seen.
+     */
+    private int cellStateId(MarkovDecisionProcess mdp, int cell)
+    {
+        int[] ids = cellStates(mdp);
+        int id = ids[cell];
+        if (id < 0)
+        {
+            id = states.find(stateOf(new Percept(mdp, cell, 0)));
+            ids[cell] = id;
+        }
+        return id;
+    }
+
+    /**
+     * Helper method returns the cached state ids of the cells, starting over
+     * if the world has changed.
+     * 
+     * @param mdp
+     *            the MDP
+     * @return the state id of each cell, or -1.
+     */
+    private int[] cellStates(MarkovDecisionProcess mdp)
+    {
+        int[] ids = cellStates;
+        if (ids == null || cellWorld != mdp.worldId())
+        {
+            ids = new int[mdp.getNumStates()];
+            Arrays.fill(ids, -1);
+            cellStates = ids;
+            cellWorld = mdp.worldId();
+        }
+        return ids;
+    }
+
+    /**
+     * Returns the state the learner perceives. Learners with their own kind
+     * of state override this.
+     * 
+     * @param p
+     *            the percept
+     * @return the state
+     */
+    protected State stateOf(Percept p)
+    {
+        return MyState.valueOf(p);
+    }
+
+    /**
+     * Returns the index of the action in the Q and N tables, adding it if it
+     * is new.
+     * 
+     * @param a
+     *            the action
+     * @return the action index
+     */
+    protected int actionId(String a)
+    {
+        Integer id = actionIds.get(a);
+        if (id == null)
+        {
+            id = actionNames.size();
+            actionIds.put(a, id);
+            actionNames.add(a);
+            q.ensureActions(actionNames.size());
+            n.ensureActions(actionNames.size());
+        }
+        return id;
+    }
+
+    /**
+     * Returns the index of the action in the Q and N tables without adding
+     * it.
+     * 
+     * @param a
+     *            the action
+     * @return the action index, or -1 if the action is not known
+     */
+    protected int findAction(String a)
+    {
+        Integer id = actionIds.get(a);
+        return (id == null) ? -1 : id;
+    }
+
+    /**
+     * @param a
+     *            the action index
+     * @return the name of the action
+     */
+    protected String actionName(int a)
+    {
+        return actionNames.get(a);
+    }
+
+    /**
+     * Registers the actions of an action space so that action indices in the
+     * Q and N tables are the same as in the action space.
+     * 
+     * @param actions
+     *            the action space
+     */
+    protected void useActions(ActionSpace actions)
+    {
+        if (actions == actionSpace)
+        {
+            return;
+        }
+        for (int a = 0; a < actions.size(); a++)
+        {
+            if (actionId(actions.name(a)) != a)
+            {
+                throw new IllegalStateException("Actions " + actions
+                    + " do not match the learned actions " + actionNames);
+            }
+        }
+        actionSpace = actions;
     }
 
     /**
@@ -60,15 +476,26 @@ public abstract class QLearner extends Player
      * @param newValue
      *            the new value
      */
-    protected void putValue(HashMap<State, HashMap<String, Double>> map,
-        State s,
-        String a, double newValue)
+    protected void putValue(ValueTable map, State s, String a, double newValue)
     {
-        if (!map.containsKey(s))
-        {
-            map.put(s, new HashMap<String, Double>());
-        }
-        map.get(s).put(a, newValue);
+        map.put(stateId(s), actionId(a), newValue);
+    }
+
+    /**
+     * map[state, action] = r, by state id and action index.
+     * 
+     * @param map
+     *            the map
+     * @param s
+     *            the state id
+     * @param a
+     *            the action index
+     * @param newValue
+     *            the new value
+     */
+    protected void putValue(ValueTable map, int s, int a, double newValue)
+    {
+        map.put(s, a, newValue);
     }
 
     /**
@@ -83,19 +510,26 @@ public abstract class QLearner extends Player
      * @param addedValue
      *            the new value.
      */
-    protected void addValue(HashMap<State, HashMap<String, Double>> map,
-        State s, String a, double addedValue)
+    protected void addValue(ValueTable map, State s, String a, double addedValue)
     {
-        if (!map.containsKey(s))
-        {
-            map.put(s, new HashMap<String, Double>());
-        }
-        double currentValue = 0.0;
-        if (map.get(s).containsKey(a))
-        {
-            currentValue = map.get(s).get(a);
-        }
-        map.get(s).put(a, currentValue + addedValue);
+        map.add(stateId(s), actionId(a), addedValue);
+    }
+
+    /**
+     * map[state, action] += r, by state id and action index.
+     * 
+     * @param map
+     *            the map.
+     * @param s
+     *            the state id.
+     * @param a
+     *            the action index.
+     * @param addedValue
+     *            the new value.
+     */
+    protected void addValue(ValueTable map, int s, int a, double addedValue)
+    {
+        map.add(s, a, addedValue);
     }
 
     /**
@@ -109,15 +543,25 @@ public abstract class QLearner extends Player
      *            the action.
      * @return map[state, action]
      */
-    protected double value(HashMap<State, HashMap<String, Double>> map,
-        State s, String a)
+    protected double value(ValueTable map, State s, String a)
     {
-        double v = 0.0;
-        if (map.containsKey(s) && map.get(s).containsKey(a))
-        {
-            v = map.get(s).get(a);
-        }
-        return v;
+        return map.get(states.find(s), findAction(a));
+    }
+
+    /**
+     * Return map[state, action], by state id and action index.
+     * 
+     * @param map
+     *            the map.
+     * @param s
+     *            the state id.
+     * @param a
+     *            the action index.
+     * @return map[state, action]
+     */
+    protected double value(ValueTable map, int s, int a)
+    {
+        return map.get(s, a);
     }
 
     /**
@@ -130,11 +574,48 @@ public abstract class QLearner extends Player
      * @return the max_a(utility(state,a))
      */
     protected double maxValue(State state, List<String> actions)
+    {
+        return maxValue(states.find(state), actions);
+    }
+
+    /**
+     * Get the utility (value) of the state, by state id.
+     * 
+     * @param s
+     *            the state id, or -1 for a state not seen
+     * @param actions
+     *            the list of actions
+     * @return the max_a(utility(state,a))
+     */
+    protected double maxValue(int s, List<String> actions)
     {
         double maxValue = Double.NEGATIVE_INFINITY;
         for (String action : actions)
         {
-            double v = value(q, state, action);
+            double v = q.get(s, findAction(action));
+            if (v > maxValue)
+            {
+                maxValue = v;
+            }
+        }
+        return maxValue;
+    }
+
+    /**
+     * Get the utility (value) of the state, by state id.
+     * 
+     * @param s
+     *            the state id
+     * @param numActions
+     *            the number of actions
+     * @return the max_a(utility(state,a))
+     */
+    protected double maxValue(int s, int numActions)
+    {
+        double maxValue = Double.NEGATIVE_INFINITY;
+        for (int a = 0; a < numActions; a++)
+        {
+            double v = q.get(s, a);
             if (v > maxValue)
             {
                 maxValue = v;
@@ -154,12 +635,15 @@ public abstract class QLearner extends Player
      */
     protected String maxExplorationAction(State state, List<String> actions)
     {
+        int s = stateId(state);
         String maxAction = null;
         double maxF = Double.NEGATIVE_INFINITY;
         double ties = 1.0;
         for (String action : actions)
         {
-            double f = explorationFunction(state, action);
+            int a = findAction(action);
+            double f = (a < 0) ? explorationFunction(state, action)
+                : explorationFunction(s, a);
             if (f == maxF)
             {
                 ties += 1.0;
@@ -175,6 +659,50 @@ public abstract class QLearner extends Player
                 ties = 1.0;
             }
         }
+        if (metrics != null && maxAction != null)
+        {
+            countChoice(maxF != q.get(s, findAction(maxAction)));
+        }
+        return maxAction;
+    }
+
+    /**
+     * Return the action with maximum exploration function, by state id.
+     * 
+     * @param s
+     *            the state id
+     * @param numActions
+     *            the number of actions
+     * @return the index of the action with highest exploration function, ties
+     *         are broken randomly
+     */
+    protected int maxExplorationAction(int s, int numActions)
+    {
+        int maxAction = -1;
+        double maxF = Double.NEGATIVE_INFINITY;
+        double ties = 1.0;
+        for (int a = 0; a < numActions; a++)
+        {
+            double f = explorationFunction(s, a);
+            if (f == maxF)
+            {
+                ties += 1.0;
+                if (rand.nextDouble() < (1.0 / ties)) {
+                    maxF = f;
+                    maxAction = a;
+                }
+            }
+            else if (f > maxF)
+            {
+                maxF = f;
+                maxAction = a;
+                ties = 1.0;
+            }
+        }
+        if (metrics != null && maxAction >= 0)
+        {
+            countChoice(maxF != q.get(s, maxAction));
+        }
         return maxAction;
     }
 
@@ -188,12 +716,26 @@ public abstract class QLearner extends Player
      * @return the action with maximum utility in this state.
      */
     protected String maxAction(State state, List<String> actions)
+    {
+        return maxAction(states.find(state), actions);
+    }
+
+    /**
+     * Get the action with maximum utility for this state, by state id.
+     * 
+     * @param s
+     *            the state id, or -1 for a state not seen
+     * @param actions
+     *            the list of actions
+     * @return the action with maximum utility in this state.
+     */
+    protected String maxAction(int s, List<String> actions)
     {
         String maxAction = null;
         double max = Double.NEGATIVE_INFINITY;
         for (String action : actions)
         {
-            double qsa = value(q, state, action);
+            double qsa = q.get(s, findAction(action));
             if (qsa > max)
             {
                 max = qsa;
@@ -203,6 +745,31 @@ public abstract class QLearner extends Player
         return maxAction;
     }
 
+    /**
+     * Get the action with maximum utility for this state, by state id.
+     * 
+     * @param s
+     *            the state id
+     * @param numActions
+     *            the number of actions
+     * @return the index of the action with maximum utility in this state.
+     */
+    protected int maxAction(int s, int numActions)
+    {
+        int maxAction = -1;
+        double max = Double.NEGATIVE_INFINITY;
+        for (int a = 0; a < numActions; a++)
+        {
+            double qsa = q.get(s, a);
+            if (qsa > max)
+            {
+                max = qsa;
+                maxAction = a;
+            }
+        }
+        return maxAction;
+    }
+
     /**
      * Return utility, U[s], for each grid cell.
      * 
@@ -213,10 +780,11 @@ public abstract class QLearner extends Player
     protected HashMap<GridCell, Double> getUtility(MarkovDecisionProcess mdp)
     {
         HashMap<GridCell, Double> value = new HashMap<GridCell, Double>();
-        for (GridCell cell : mdp.getStates())
+        List<GridCell> cells = mdp.getStates();
+        List<String> actions = mdp.getActions();
+        for (int i = 0; i < cells.size(); i++)
         {
-            State state = new MyState(new Percept(mdp, cell, 0));
-            value.put(cell, maxValue(state, mdp.getActions()));
+            value.put(cells.get(i), maxValue(cellStateId(mdp, i), actions));
         }
         return value;
     }
@@ -231,10 +799,11 @@ public abstract class QLearner extends Player
     protected HashMap<GridCell, String> getPolicy(MarkovDecisionProcess mdp)
     {
         HashMap<GridCell, String> value = new HashMap<GridCell, String>();
-        for (GridCell cell : mdp.getStates())
+        List<GridCell> cells = mdp.getStates();
+        List<String> actions = mdp.getActions();
+        for (int i = 0; i < cells.size(); i++)
         {
-            MyState state = new MyState(new Percept(mdp, cell, 0));
-            value.put(cell, maxAction(state, mdp.getActions()));
+            value.put(cells.get(i), maxAction(cellStateId(mdp, i), actions));
         }
         return value;
     }
@@ -249,11 +818,14 @@ public abstract class QLearner extends Player
     protected HashMap<GridCell, Double> getN(MarkovDecisionProcess mdp)
     {
         HashMap<GridCell, Double> value = new HashMap<GridCell, Double>();
-        for (GridCell cell : mdp.getStates())
+        List<GridCell> cells = mdp.getStates();
+        List<String> actions = mdp.getActions();
+        for (int i = 0; i < cells.size(); i++)
         {
-            MyState state = new MyState(new Percept(mdp, cell, 0));
-            String action = maxAction(state, mdp.getActions());
-            value.put(cell, value(n, state, action));
+            int s = cellStateId(mdp, i);
+            String action = maxAction(s, actions);
+            value.put(cells.get(i), (action == null) ? 0.0
+                : n.get(s, findAction(action)));
         }
         return value;
     }
@@ -268,9 +840,12 @@ public abstract class QLearner extends Player
     protected HashMap<State, Double> getUtility(List<String> actions)
     {
         HashMap<State, Double> value = new HashMap<State, Double>();
-        for (State state : q.keySet())
+        for (int s = 0; s < states.size(); s++)
         {
-            value.put(state, this.maxValue(state, actions));
+            if (q.contains(s))
+            {
+                value.put(states.get(s), maxValue(states.get(s), actions));
+            }
         }
         return value;
     }
@@ -285,9 +860,12 @@ public abstract class QLearner extends Player
     protected HashMap<State, String> getPolicy(List<String> actions)
     {
         HashMap<State, String> value = new HashMap<State, String>();
-        for (State state : q.keySet())
+        for (int s = 0; s < states.size(); s++)
         {
-            value.put(state, this.maxAction(state, actions));
+            if (q.contains(s))
+            {
+                value.put(states.get(s), maxAction(states.get(s), actions));
+            }
         }
         return value;
     }
@@ -318,8 +896,6 @@ public abstract class QLearner extends Player
     public void displayStats(MarkovDecisionProcess mdp)
     {
         HashMap<State, String> policy = getPolicy(mdp.getActions());
-        HashMap<State, HashMap<String, Double>> q = getQ();
-        HashMap<State, HashMap<String, Double>> n = getN();
         for (State s : policy.keySet())
         {
             for (String a : mdp.getActions())
@@ -344,4 +920,19 @@ public abstract class QLearner extends Player
      */
     protected abstract double explorationFunction(State state, String action);
 
+    /**
+     * The exploration function, by state id and action index. Override this
+     * to avoid looking up the state and action.
+     * 
+     * @param s
+     *            the state id
+     * @param a
+     *            the action index
+     * @return the exploration function.
+     */
+    protected double explorationFunction(int s, int a)
+    {
+        return explorationFunction(states.get(s), actionName(a));
+    }
+
 }
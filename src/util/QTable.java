@@ -0,0 +1,238 @@
+package util;
+
+import java.util.Arrays;
+
+/**
+ * A table of values map[s, a] stored in a flat array indexed by
+ * stateId * numActions + actionIndex. State ids come from a StateIndex that
+ * can be shared by several tables (e.g., Q[s,a] and N[s,a]). The table grows
+ * as new states and actions appear, so it is for use by one thread at a
+ * time; see ConcurrentQTable for a table several threads can update.
+ *
+ * @author agent
+ * @version 2026-10-17
+ *
+ */
+public class QTable extends ValueTable
+{
+    private int numActions;
+    private int capacity;
+    private double[] values;
+    private boolean[] present;
+    private int[] stateEntries;
+    private int numStates;
+
+    /**
+     * Constructor takes the index of states.
+     *
+     * @param states
+     *            the state index.
+     * @param numActions
+     *            the initial number of actions.
+     */
+    public QTable(StateIndex states, int numActions)
+    {
+        super(states);
+        this.numActions = numActions;
+        capacity = 16;
+        values = new double[capacity * numActions];
+        present = new boolean[capacity * numActions];
+        stateEntries = new int[capacity];
+    }
+
+    /**
+     * Constructor copies another table, giving each state the same id.
+     *
+     * @param table
+     *            the table to copy.
+     */
+    public QTable(ValueTable table)
+    {
+        this(table.states(), table.numActions());
+        int numIds = table.states().size();
+        for (int s = 0; s < numIds; s++)
+        {
+            for (int a = 0; a < numActions; a++)
+            {
+                if (table.contains(s, a))
+                {
+                    put(s, a, table.get(s, a));
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the number of actions per state.
+     */
+    @Override
+    public int numActions()
+    {
+        return numActions;
+    }
+
+    /**
+     * @return the number of states with at least one entry.
+     */
+    @Override
+    public int size()
+    {
+        return numStates;
+    }
+
+    /**
+     * @return the bytes of the table's arrays.
+     */
+    @Override
+    public long memoryBytes()
+    {
+        return (long) capacity * numActions * (8 + 1) + 4L * capacity;
+    }
+
+    /**
+     * Widens each row to hold at least this many actions.
+     *
+     * @param n
+     *            the number of actions.
+     */
+    @Override
+    public void ensureActions(int n)
+    {
+        if (n <= numActions)
+        {
+            return;
+        }
+        double[] newValues = new double[capacity * n];
+        boolean[] newPresent = new boolean[capacity * n];
+        for (int s = 0; s < capacity; s++)
+        {
+            System.arraycopy(values, s * numActions, newValues, s * n,
+                numActions);
+            System.arraycopy(present, s * numActions, newPresent, s * n,
+                numActions);
+        }
+        values = newValues;
+        present = newPresent;
+        numActions = n;
+    }
+
+    /**
+     * Helper method grows the table to hold this state id.
+     *
+     * @param s
+     *            the state id.
+     */
+    private void ensureState(int s)
+    {
+        if (s < capacity)
+        {
+            return;
+        }
+        capacity = Math.max(2 * capacity, s + 1);
+        values = Arrays.copyOf(values, capacity * numActions);
+        present = Arrays.copyOf(present, capacity * numActions);
+        stateEntries = Arrays.copyOf(stateEntries, capacity);
+    }
+
+    /**
+     * Return map[s, a].
+     *
+     * @param s
+     *            the state id.
+     * @param a
+     *            the action index.
+     * @return map[s, a], or 0.0 if it was never written.
+     */
+    @Override
+    public double get(int s, int a)
+    {
+        return (s >= 0 && s < capacity && a >= 0 && a < numActions)
+            ? values[s * numActions + a]
+            : 0.0;
+    }
+
+    /**
+     * map[s, a] = v.
+     *
+     * @param s
+     *            the state id.
+     * @param a
+     *            the action index.
+     * @param v
+     *            the new value.
+     */
+    @Override
+    public void put(int s, int a, double v)
+    {
+        ensureState(s);
+        ensureActions(a + 1);
+        int i = s * numActions + a;
+        mark(s, i);
+        values[i] = v;
+    }
+
+    /**
+     * map[s, a] += v.
+     *
+     * @param s
+     *            the state id.
+     * @param a
+     *            the action index.
+     * @param v
+     *            the value to add.
+     */
+    @Override
+    public void add(int s, int a, double v)
+    {
+        ensureState(s);
+        ensureActions(a + 1);
+        int i = s * numActions + a;
+        mark(s, i);
+        values[i] += v;
+    }
+
+    /**
+     * Helper method records that an entry has been written.
+     *
+     * @param s
+     *            the state id.
+     * @param i
+     *            the position of the entry.
+     */
+    private void mark(int s, int i)
+    {
+        if (!present[i])
+        {
+            present[i] = true;
+            if (stateEntries[s]++ == 0)
+            {
+                numStates++;
+            }
+        }
+    }
+
+    /**
+     * @param s
+     *            the state id.
+     * @param a
+     *            the action index.
+     * @return true if map[s, a] has been written.
+     */
+    @Override
+    public boolean contains(int s, int a)
+    {
+        return s >= 0 && s < capacity && a >= 0 && a < numActions
+            && present[s * numActions + a];
+    }
+
+    /**
+     * @param s
+     *            the state id.
+     * @return true if any map[s, a] has been written.
+     */
+    @Override
+    public boolean contains(int s)
+    {
+        return s >= 0 && s < capacity && stateEntries[s] > 0;
+    }
+}
@@ -19,7 +19,18 @@ public abstract class State
      */
     public State(Percept p)
     {
-        terminal = p.current().isTerminal();
+        terminal = p.isTerminal();
+    }
+
+    /**
+     * Constructor sets the terminal state directly.
+     * 
+     * @param terminal
+     *            true if the state is terminal
+     */
+    protected State(boolean terminal)
+    {
+        this.terminal = terminal;
     }
 
     /**
@@ -0,0 +1,51 @@
+package util;
+
+import java.util.List;
+
+/**
+ * Interns states to dense integer ids 0, 1, 2, ... so that tables can store
+ * values for each state in flat arrays. Ids are assigned in the order the
+ * states are first interned, and are never reused. HashStateIndex keeps the
+ * states on the heap; PackedStateIndex keeps their codes off it.
+ *
+ * @author agent
+ * @version 2026-10-17
+ *
+ */
+public abstract class StateIndex
+{
+    /**
+     * Returns the id of the state, assigning the next id if it is new.
+     *
+     * @param s
+     *            the state.
+     * @return the id of the state.
+     */
+    public abstract int intern(State s);
+
+    /**
+     * Returns the id of the state without adding it.
+     *
+     * @param s
+     *            the state.
+     * @return the id of the state, or -1 if it has not been interned.
+     */
+    public abstract int find(Object s);
+
+    /**
+     * @param id
+     *            the id of a state.
+     * @return the state with this id.
+     */
+    public abstract State get(int id);
+
+    /**
+     * @return the number of states interned.
+     */
+    public abstract int size();
+
+    /**
+     * @return the interned states in order of their ids.
+     */
+    public abstract List<State> states();
+}
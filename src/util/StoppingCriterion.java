@@ -0,0 +1,32 @@
+package util;
+
+/**
+ * Decides when a Q-learner has learned enough that EpisodeDriver can stop
+ * training it. A criterion sees the score of every episode, and is asked
+ * every few episodes whether the learner has converged, so both should be
+ * cheap: criteria keep what they need from one check to the next rather
+ * than rebuilding maps of the learner's tables.
+ *
+ * @author agent
+ * @version 2026-10-17
+ *
+ */
+public interface StoppingCriterion
+{
+    /**
+     * Called after every episode.
+     *
+     * @param score
+     *            the score of the episode.
+     */
+    void episodeEnded(double score);
+
+    /**
+     * Called every few episodes, between episodes.
+     *
+     * @param learner
+     *            the learner.
+     * @return true if the learner has converged by this criterion.
+     */
+    boolean isConverged(QLearner learner);
+}
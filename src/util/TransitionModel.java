@@ -0,0 +1,447 @@
+package util;
+
+import java.util.Arrays;
+
+/**
+ * Sparse state transition model P(s2|s1,a). The non-zero successors of each
+ * (state, action) pair are stored in compressed sparse rows: the successor
+ * state indices in increasing order, their probabilities, and the cumulative
+ * probabilities. The model is immutable once built, so it can be shared.
+ * 
+ * Successors are sampled in O(1) from an alias table built once per (state,
+ * action) pair, or in O(log k) by searching the cumulative probabilities,
+ * which reproduces the successor the original linear scan over all states
+ * would pick for the same random number.
+ *
+ * @author agent
+ * @version 2026-10-17
+ *
+ */
+public class TransitionModel
+{
+    private final int numStates;
+    private final int numActions;
+    // successors of (s, a) are in [rowStart[s * numActions + a],
+    // rowStart[s * numActions + a + 1])
+    private final int[] rowStart;
+    private final int[] successors;
+    private final double[] probabilities;
+    private final double[] cumulative;
+    // alias table: slot k keeps itself with probability aliasCutoff[k],
+    // otherwise it yields the successor at position alias[k].
+    private final double[] aliasCutoff;
+    private final int[] alias;
+
+    /**
+     * Constructor takes the compressed rows.
+     *
+     * @param numStates
+     *            the number of states.
+     * @param numActions
+     *            the number of actions.
+     * @param rowStart
+     *            the start of each (state, action) row.
+     * @param successors
+     *            the successor states.
+     * @param probabilities
+     *            the successor probabilities.
+     */
+    TransitionModel(int numStates, int numActions, int[] rowStart,
+        int[] successors, double[] probabilities)
+    {
+        this.numStates = numStates;
+        this.numActions = numActions;
+        this.rowStart = rowStart;
+        this.successors = successors;
+        this.probabilities = probabilities;
+        cumulative = new double[probabilities.length];
+        aliasCutoff = new double[probabilities.length];
+        alias = new int[probabilities.length];
+        int[] small = new int[0];
+        int[] large = new int[0];
+        for (int row = 0; row < numStates * numActions; row++)
+        {
+            int lo = rowStart[row];
+            int hi = rowStart[row + 1];
+            double sum = 0.0;
+            for (int k = lo; k < hi; k++)
+            {
+                sum += probabilities[k];
+                cumulative[k] = sum;
+            }
+            if (hi - lo > small.length)
+            {
+                small = new int[hi - lo];
+                large = new int[hi - lo];
+            }
+            buildAlias(lo, hi, sum, small, large);
+        }
+    }
+
+    /**
+     * Helper method builds the alias table for one (state, action) row with
+     * Vose's method.
+     *
+     * @param lo
+     *            the position of the first successor.
+     * @param hi
+     *            the position after the last successor.
+     * @param total
+     *            the total probability of the row.
+     * @param small
+     *            work space for under-full slots.
+     * @param large
+     *            work space for over-full slots.
+     */
+    private void buildAlias(int lo, int hi, double total, int[] small,
+        int[] large)
+    {
+        int n = hi - lo;
+        int numSmall = 0;
+        int numLarge = 0;
+        for (int k = lo; k < hi; k++)
+        {
+            aliasCutoff[k] = probabilities[k] * n / total;
+            alias[k] = k;
+            if (aliasCutoff[k] < 1.0)
+            {
+                small[numSmall++] = k;
+            }
+            else
+            {
+                large[numLarge++] = k;
+            }
+        }
+        while (numSmall > 0 && numLarge > 0)
+        {
+            int less = small[--numSmall];
+            int more = large[--numLarge];
+            alias[less] = more;
+            aliasCutoff[more] += aliasCutoff[less] - 1.0;
+            if (aliasCutoff[more] < 1.0)
+            {
+                small[numSmall++] = more;
+            }
+            else
+            {
+                large[numLarge++] = more;
+            }
+        }
+        // whatever is left over is full up to rounding error.
+        while (numLarge > 0)
+        {
+            aliasCutoff[large[--numLarge]] = 1.0;
+        }
+        while (numSmall > 0)
+        {
+            aliasCutoff[small[--numSmall]] = 1.0;
+        }
+    }
+
+    /**
+     * @return the number of states.
+     */
+    public int numStates()
+    {
+        return numStates;
+    }
+
+    /**
+     * @return the number of actions.
+     */
+    public int numActions()
+    {
+        return numActions;
+    }
+
+    /**
+     * @return the total number of non-zero transitions.
+     */
+    public int numTransitions()
+    {
+        return successors.length;
+    }
+
+    /**
+     * Returns the position of the first successor of (s, a).
+     *
+     * @param s
+     *            the state index.
+     * @param a
+     *            the action index.
+     * @return the position of the first successor.
+     */
+    public int first(int s, int a)
+    {
+        return rowStart[s * numActions + a];
+    }
+
+    /**
+     * Returns the position just past the last successor of (s, a).
+     *
+     * @param s
+     *            the state index.
+     * @param a
+     *            the action index.
+     * @return the position after the last successor.
+     */
+    public int end(int s, int a)
+    {
+        return rowStart[s * numActions + a + 1];
+    }
+
+    /**
+     * @param k
+     *            the position of a transition.
+     * @return the successor state index.
+     */
+    public int successor(int k)
+    {
+        return successors[k];
+    }
+
+    /**
+     * @param k
+     *            the position of a transition.
+     * @return the probability of the transition.
+     */
+    public double probability(int k)
+    {
+        return probabilities[k];
+    }
+
+    /**
+     * @param k
+     *            the position of a transition.
+     * @return the sum of the probabilities of the transitions of the same
+     *         (state, action) pair up to and including this one.
+     */
+    public double cumulative(int k)
+    {
+        return cumulative[k];
+    }
+
+    /**
+     * Returns P(s2|s1,a) in O(log k) for k successors.
+     *
+     * @param s1
+     *            Initial state index.
+     * @param a
+     *            Action index.
+     * @param s2
+     *            Final state index.
+     * @return P(s2|s1,a)
+     */
+    public double prob(int s1, int a, int s2)
+    {
+        if (s2 < 0 || s2 >= numStates)
+        {
+            throw new IndexOutOfBoundsException("state " + s2);
+        }
+        int k = Arrays.binarySearch(successors, first(s1, a), end(s1, a), s2);
+        return (k >= 0) ? probabilities[k] : 0.0;
+    }
+
+    /**
+     * Samples a successor of (s, a) in O(1) with the alias table.
+     *
+     * @param s
+     *            the state index.
+     * @param a
+     *            the action index.
+     * @param u
+     *            a uniform random number in [0, 1).
+     * @return the successor state index, or -1 if (s, a) has no successors.
+     */
+    public int sample(int s, int a, double u)
+    {
+        int lo = first(s, a);
+        int n = end(s, a) - lo;
+        if (n == 0)
+        {
+            return -1;
+        }
+        double x = u * n;
+        int i = (int) x;
+        if (i >= n)
+        {
+            i = n - 1;
+        }
+        int k = lo + i;
+        return successors[(x - i < aliasCutoff[k]) ? k : alias[k]];
+    }
+
+    /**
+     * Samples a successor of (s, a) in O(log k) by searching the cumulative
+     * probabilities. For the same random number this returns the state the
+     * linear scan sum += P(s2|s,a) over s2 = 0, 1, ... stops at, including
+     * its edge cases: u = 0 stops at state 0, and a total probability that
+     * rounds below u runs off the end to the last state.
+     *
+     * @param s
+     *            the state index.
+     * @param a
+     *            the action index.
+     * @param u
+     *            a uniform random number in [0, 1).
+     * @return the successor state index.
+     */
+    public int sampleCumulative(int s, int a, double u)
+    {
+        if (u <= 0.0)
+        {
+            return 0;
+        }
+        int lo = first(s, a);
+        int hi = end(s, a);
+        // find the first position with cumulative[k] >= u
+        while (lo < hi)
+        {
+            int mid = (lo + hi) >>> 1;
+            if (cumulative[mid] >= u)
+            {
+                hi = mid;
+            }
+            else
+            {
+                lo = mid + 1;
+            }
+        }
+        return (lo < end(s, a)) ? successors[lo] : numStates - 1;
+    }
+
+    /**
+     * Accumulates transitions and builds the sparse model. Probabilities added
+     * for the same (s1, a, s2) are summed in the order they were added.
+     */
+    public static class Builder
+    {
+        private final int numStates;
+        private final int numActions;
+        private int size;
+        private int[] rows;
+        private int[] targets;
+        private double[] values;
+
+        /**
+         * Constructor takes the dimensions of the model.
+         *
+         * @param numStates
+         *            the number of states.
+         * @param numActions
+         *            the number of actions.
+         * @param expected
+         *            the expected number of transitions.
+         */
+        public Builder(int numStates, int numActions, int expected)
+        {
+            this.numStates = numStates;
+            this.numActions = numActions;
+            int capacity = Math.max(expected, 16);
+            rows = new int[capacity];
+            targets = new int[capacity];
+            values = new double[capacity];
+        }
+
+        /**
+         * P(s2|s1,a) += p.
+         *
+         * @param s1
+         *            Initial state index.
+         * @param a
+         *            Action index.
+         * @param s2
+         *            Final state index.
+         * @param p
+         *            the probability to add.
+         */
+        public void add(int s1, int a, int s2, double p)
+        {
+            if (s1 < 0 || s1 >= numStates || s2 < 0 || s2 >= numStates
+                || a < 0 || a >= numActions)
+            {
+                throw new IllegalArgumentException("Unknown transition "
+                    + s1 + " " + a + " " + s2);
+            }
+            if (size == rows.length)
+            {
+                int capacity = 2 * size;
+                rows = Arrays.copyOf(rows, capacity);
+                targets = Arrays.copyOf(targets, capacity);
+                values = Arrays.copyOf(values, capacity);
+            }
+            rows[size] = s1 * numActions + a;
+            targets[size] = s2;
+            values[size] = p;
+            size++;
+        }
+
+        /**
+         * @return the sparse transition model.
+         */
+        public TransitionModel build()
+        {
+            // bucket the transitions by (state, action), keeping their order.
+            int numRows = numStates * numActions;
+            int[] rowStart = new int[numRows + 1];
+            for (int i = 0; i < size; i++)
+            {
+                rowStart[rows[i] + 1]++;
+            }
+            for (int row = 0; row < numRows; row++)
+            {
+                rowStart[row + 1] += rowStart[row];
+            }
+            int[] next = Arrays.copyOf(rowStart, numRows);
+            int[] order = new int[size];
+            for (int i = 0; i < size; i++)
+            {
+                order[next[rows[i]]++] = i;
+            }
+
+            // within each row, sort by successor (stable) and sum duplicates.
+            int[] successors = new int[size];
+            double[] probabilities = new double[size];
+            int[] compactStart = new int[numRows + 1];
+            int count = 0;
+            for (int row = 0; row < numRows; row++)
+            {
+                int lo = rowStart[row];
+                int hi = rowStart[row + 1];
+                for (int i = lo + 1; i < hi; i++)
+                {
+                    int e = order[i];
+                    int j = i - 1;
+                    while (j >= lo && targets[order[j]] > targets[e])
+                    {
+                        order[j + 1] = order[j];
+                        j--;
+                    }
+                    order[j + 1] = e;
+                }
+                compactStart[row] = count;
+                int i = lo;
+                while (i < hi)
+                {
+                    int s2 = targets[order[i]];
+                    double p = 0.0;
+                    while (i < hi && targets[order[i]] == s2)
+                    {
+                        p += values[order[i]];
+                        i++;
+                    }
+                    if (p != 0.0)
+                    {
+                        successors[count] = s2;
+                        probabilities[count] = p;
+                        count++;
+                    }
+                }
+            }
+            compactStart[numRows] = count;
+            return new TransitionModel(numStates, numActions, compactStart,
+                Arrays.copyOf(successors, count),
+                Arrays.copyOf(probabilities, count));
+        }
+    }
+}
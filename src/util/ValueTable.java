@@ -0,0 +1,253 @@
+package util;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A table of values map[s, a], such as Q[s,a] or N[s,a], indexed by the id
+ * of a state in a StateIndex and the index of an action. Entries that were
+ * never written read as 0.0 and are left out of the map view.
+ *
+ * @author agent
+ * @version 2026-10-17
+ *
+ */
+public abstract class ValueTable
+{
+    protected StateIndex states;
+
+    /**
+     * Constructor takes the index of states.
+     *
+     * @param states
+     *            the state index.
+     */
+    protected ValueTable(StateIndex states)
+    {
+        this.states = states;
+    }
+
+    /**
+     * @return the index of states.
+     */
+    public StateIndex states()
+    {
+        return states;
+    }
+
+    /**
+     * @return the number of actions per state.
+     */
+    public abstract int numActions();
+
+    /**
+     * @return the number of states with at least one entry.
+     */
+    public abstract int size();
+
+    /**
+     * @return an estimate of the bytes of memory the table holds.
+     */
+    public abstract long memoryBytes();
+
+    /**
+     * Widens each row to hold at least this many actions.
+     *
+     * @param n
+     *            the number of actions.
+     */
+    public abstract void ensureActions(int n);
+
+    /**
+     * Return map[s, a].
+     *
+     * @param s
+     *            the state id, or -1 for a state not seen.
+     * @param a
+     *            the action index, or -1 for an action not seen.
+     * @return map[s, a], or 0.0 if it was never written.
+     */
+    public abstract double get(int s, int a);
+
+    /**
+     * map[s, a] = v.
+     *
+     * @param s
+     *            the state id.
+     * @param a
+     *            the action index.
+     * @param v
+     *            the new value.
+     */
+    public abstract void put(int s, int a, double v);
+
+    /**
+     * map[s, a] += v.
+     *
+     * @param s
+     *            the state id.
+     * @param a
+     *            the action index.
+     * @param v
+     *            the value to add.
+     */
+    public abstract void add(int s, int a, double v);
+
+    /**
+     * @param s
+     *            the state id.
+     * @param a
+     *            the action index.
+     * @return true if map[s, a] has been written.
+     */
+    public abstract boolean contains(int s, int a);
+
+    /**
+     * @param s
+     *            the state id.
+     * @return true if any map[s, a] has been written.
+     */
+    public abstract boolean contains(int s);
+
+    /**
+     * Returns a read-only view of the table as map[state][action].
+     *
+     * @param actions
+     *            the names of the actions, by index.
+     * @return the map view.
+     */
+    public Map<State, Map<String, Double>> asMap(List<String> actions)
+    {
+        return new MapView(actions);
+    }
+
+    /**
+     * Read-only map view of the table. The outer map is live; each inner map
+     * is a snapshot of the row when it is retrieved.
+     */
+    private class MapView extends AbstractMap<State, Map<String, Double>>
+    {
+        private List<String> actions;
+
+        /**
+         * Constructor takes the names of the actions.
+         *
+         * @param actions
+         *            the names of the actions, by index.
+         */
+        MapView(List<String> actions)
+        {
+            this.actions = actions;
+        }
+
+        /**
+         * Helper method copies the row for a state.
+         *
+         * @param s
+         *            the state id.
+         * @return the row as a map from action name to value.
+         */
+        private Map<String, Double> row(int s)
+        {
+            HashMap<String, Double> row = new HashMap<String, Double>();
+            for (int a = 0; a < actions.size(); a++)
+            {
+                if (contains(s, a))
+                {
+                    row.put(actions.get(a), ValueTable.this.get(s, a));
+                }
+            }
+            return Collections.unmodifiableMap(row);
+        }
+
+        @Override
+        public boolean containsKey(Object key)
+        {
+            return contains(states.find(key));
+        }
+
+        @Override
+        public Map<String, Double> get(Object key)
+        {
+            int s = states.find(key);
+            return contains(s) ? row(s) : null;
+        }
+
+        @Override
+        public int size()
+        {
+            return ValueTable.this.size();
+        }
+
+        @Override
+        public Set<Map.Entry<State, Map<String, Double>>> entrySet()
+        {
+            return new AbstractSet<Map.Entry<State, Map<String, Double>>>()
+            {
+                @Override
+                public Iterator<Map.Entry<State, Map<String, Double>>>
+                    iterator()
+                {
+                    return new EntryIterator();
+                }
+
+                @Override
+                public int size()
+                {
+                    return ValueTable.this.size();
+                }
+            };
+        }
+
+        /**
+         * Iterates over the states that have entries, in order of their ids.
+         */
+        private class EntryIterator
+            implements Iterator<Map.Entry<State, Map<String, Double>>>
+        {
+            private int next = advance(0);
+
+            /**
+             * Helper method finds the next state with entries.
+             *
+             * @param s
+             *            the state id to start from.
+             * @return the next state id with entries.
+             */
+            private int advance(int s)
+            {
+                while (s < states.size() && !contains(s))
+                {
+                    s++;
+                }
+                return s;
+            }
+
+            @Override
+            public boolean hasNext()
+            {
+                return next < states.size();
+            }
+
+            @Override
+            public Map.Entry<State, Map<String, Double>> next()
+            {
+                if (!hasNext())
+                {
+                    throw new NoSuchElementException();
+                }
+                int s = next;
+                next = advance(s + 1);
+                return new SimpleImmutableEntry<State, Map<String, Double>>(
+                    states.get(s), row(s));
+            }
+        }
+    }
+}
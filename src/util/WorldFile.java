@@ -0,0 +1,349 @@
+package util;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Random;
+import java.util.Scanner;
+
+/**
+ * Reads and writes MDPs in a compact binary format, so large worlds can be
+ * loaded by memory-mapping the file and copying arrays rather than parsing
+ * text. All values are big-endian:
+ *
+ * <pre>
+ * int    magic ('QLWD'), int version (2)
+ * int    numStates, int numActions, int numTransitions
+ * double gamma, int start state index
+ * per action: short length, ASCII name
+ * double actionUncertainty[numActions][numActions]
+ * int    row[numStates], int col[numStates]
+ * double reward[numStates]
+ * byte   terminal[numStates]
+ * int    rowStart[numStates * numActions + 1]
+ * int    successor[numTransitions]
+ * double probability[numTransitions]
+ * int    numNames (0 or numStates)
+ * per name: short length, UTF-8 name
+ * </pre>
+ *
+ * The successors of (s, a) are at positions rowStart[s * numActions + a] up
+ * to rowStart[s * numActions + a + 1], as in TransitionModel. The state
+ * names are only written if some state is not named for its grid location;
+ * version 1 files end before them.
+ *
+ * @author agent
+ * @version 2026-10-17
+ *
+ */
+public class WorldFile
+{
+    public static final int MAGIC = 0x514C5744;
+    public static final int VERSION = 2;
+
+    /**
+     * Writes the MDP to a binary world file.
+     *
+     * @param mdp
+     *            the MDP.
+     * @param file
+     *            the file to write.
+     * @throws IOException
+     *             if the file cannot be written.
+     */
+    public static void write(MarkovDecisionProcess mdp, File file)
+        throws IOException
+    {
+        ActionSpace actions = mdp.getActionSpace();
+        TransitionModel transitions = mdp.getTransitions();
+        double[][] actionUncertainty = mdp.getActionUncertainty();
+        int numStates = mdp.getNumStates();
+        int numActions = actions.size();
+        try (DataOutputStream out = new DataOutputStream(
+            new BufferedOutputStream(new FileOutputStream(file), 1 << 16)))
+        {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(numStates);
+            out.writeInt(numActions);
+            out.writeInt(transitions.numTransitions());
+            out.writeDouble(mdp.getGamma());
+            out.writeInt(mdp.getCurrentIndex());
+            for (int a = 0; a < numActions; a++)
+            {
+                byte[] name = actions.name(a).getBytes(
+                    StandardCharsets.US_ASCII);
+                out.writeShort(name.length);
+                out.write(name);
+            }
+            for (int i = 0; i < numActions; i++)
+            {
+                for (int j = 0; j < numActions; j++)
+                {
+                    out.writeDouble(actionUncertainty[i][j]);
+                }
+            }
+            for (int s = 0; s < numStates; s++)
+            {
+                out.writeInt(mdp.rowOf(s));
+            }
+            for (int s = 0; s < numStates; s++)
+            {
+                out.writeInt(mdp.colOf(s));
+            }
+            for (int s = 0; s < numStates; s++)
+            {
+                out.writeDouble(mdp.reward(s));
+            }
+            for (int s = 0; s < numStates; s++)
+            {
+                out.writeByte(mdp.isTerminal(s) ? 1 : 0);
+            }
+            for (int s = 0; s < numStates; s++)
+            {
+                for (int a = 0; a < numActions; a++)
+                {
+                    out.writeInt(transitions.first(s, a));
+                }
+            }
+            out.writeInt(transitions.numTransitions());
+            for (int k = 0; k < transitions.numTransitions(); k++)
+            {
+                out.writeInt(transitions.successor(k));
+            }
+            for (int k = 0; k < transitions.numTransitions(); k++)
+            {
+                out.writeDouble(transitions.probability(k));
+            }
+            int numNames = mdp.hasCustomNames() ? numStates : 0;
+            out.writeInt(numNames);
+            for (int s = 0; s < numNames; s++)
+            {
+                byte[] name = mdp.nameOf(s).getBytes(StandardCharsets.UTF_8);
+                out.writeShort(name.length);
+                out.write(name);
+            }
+        }
+    }
+
+    /**
+     * Reads an MDP from a binary world file by memory-mapping it.
+     *
+     * @param file
+     *            the file to read.
+     * @param seed
+     *            the seed for the MDP's random number generator, or null.
+     * @return the MDP.
+     * @throws IOException
+     *             if the file cannot be read or is not a world file.
+     */
+    public static MarkovDecisionProcess read(File file, Long seed)
+        throws IOException
+    {
+        try (RandomAccessFile in = new RandomAccessFile(file, "r");
+            FileChannel channel = in.getChannel())
+        {
+            if (channel.size() > Integer.MAX_VALUE)
+            {
+                throw new IOException(file + " is too large to map");
+            }
+            return read(channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                channel.size()), seed);
+        }
+    }
+
+    /**
+     * Reads an MDP from a buffer holding a binary world.
+     *
+     * @param buf
+     *            the buffer, positioned at the start of the world.
+     * @param seed
+     *            the seed for the MDP's random number generator, or null.
+     * @return the MDP.
+     * @throws IOException
+     *             if the buffer does not hold a supported world.
+     */
+    public static MarkovDecisionProcess read(ByteBuffer buf, Long seed)
+        throws IOException
+    {
+        if (buf.remaining() < 8 || buf.getInt() != MAGIC)
+        {
+            throw new IOException("Not a binary world file");
+        }
+        int version = buf.getInt();
+        if (version != 1 && version != VERSION)
+        {
+            throw new IOException("Unsupported world file version "
+                + version);
+        }
+        try
+        {
+            return readWorld(buf, version, seed);
+        }
+        catch (RuntimeException e)
+        {
+            // a negative length, a short file, or an inconsistent world.
+            throw new IOException("Not a valid binary world file", e);
+        }
+    }
+
+    /**
+     * Helper method reads the world after the magic number and version.
+     *
+     * @param buf
+     *            the buffer, positioned after the version.
+     * @param version
+     *            the version of the world file.
+     * @param seed
+     *            the seed for the MDP's random number generator, or null.
+     * @return the MDP.
+     * @throws IOException
+     *             if the counts do not fit the buffer.
+     */
+    private static MarkovDecisionProcess readWorld(ByteBuffer buf,
+        int version, Long seed) throws IOException
+    {
+        int numStates = buf.getInt();
+        int numActions = buf.getInt();
+        int numTransitions = buf.getInt();
+        double gamma = buf.getDouble();
+        int start = buf.getInt();
+        // each action name takes at least its 2-byte length
+        if (numStates < 0 || numActions < 0 || numTransitions < 0
+            || numActions > buf.remaining() / 2)
+        {
+            throw new IOException("World file has bad counts");
+        }
+
+        ArrayList<String> names = new ArrayList<String>(numActions);
+        for (int a = 0; a < numActions; a++)
+        {
+            byte[] name = new byte[buf.getShort()];
+            buf.get(name);
+            names.add(new String(name, StandardCharsets.US_ASCII));
+        }
+        long arrayBytes = 8L * numActions * numActions + 17L * numStates
+            + 4L * ((long) numStates * numActions + 1) + 12L * numTransitions;
+        if (arrayBytes > buf.remaining())
+        {
+            throw new IOException("World file is truncated");
+        }
+        double[][] actionUncertainty = new double[numActions][numActions];
+        for (int i = 0; i < numActions; i++)
+        {
+            buf.asDoubleBuffer().get(actionUncertainty[i]);
+            skip(buf, 8 * numActions);
+        }
+
+        int[] rows = new int[numStates];
+        int[] cols = new int[numStates];
+        double[] rewards = new double[numStates];
+        byte[] terminal = new byte[numStates];
+        buf.asIntBuffer().get(rows);
+        skip(buf, 4 * numStates);
+        buf.asIntBuffer().get(cols);
+        skip(buf, 4 * numStates);
+        buf.asDoubleBuffer().get(rewards);
+        skip(buf, 8 * numStates);
+        buf.get(terminal);
+
+        int[] rowStart = new int[numStates * numActions + 1];
+        int[] successors = new int[numTransitions];
+        double[] probabilities = new double[numTransitions];
+        buf.asIntBuffer().get(rowStart);
+        skip(buf, 4 * rowStart.length);
+        buf.asIntBuffer().get(successors);
+        skip(buf, 4 * numTransitions);
+        buf.asDoubleBuffer().get(probabilities);
+        skip(buf, 8 * numTransitions);
+
+        String[] stateNames = null;
+        if (version > 1)
+        {
+            int numNames = buf.getInt();
+            if (numNames != 0 && numNames != numStates)
+            {
+                throw new IOException("World file has " + numNames
+                    + " names for " + numStates + " states");
+            }
+            if (numNames > 0)
+            {
+                stateNames = new String[numNames];
+                for (int s = 0; s < numNames; s++)
+                {
+                    byte[] name = new byte[buf.getShort()];
+                    buf.get(name);
+                    stateNames[s] = new String(name, StandardCharsets.UTF_8);
+                }
+            }
+        }
+
+        BitSet terminalStates = new BitSet(numStates);
+        for (int s = 0; s < numStates; s++)
+        {
+            if (terminal[s] != 0)
+            {
+                terminalStates.set(s);
+            }
+        }
+        TransitionModel transitions = new TransitionModel(numStates,
+            numActions, rowStart, successors, probabilities);
+        Random rand = (seed == null) ? new Random() : new Random(seed);
+        return new MarkovDecisionProcess(stateNames, rewards, terminalStates,
+            rows, cols, new ActionSpace(names), actionUncertainty,
+            transitions, gamma, start, rand);
+    }
+
+    /**
+     * Helper method moves the buffer past an array read through a view.
+     *
+     * @param buf
+     *            the buffer.
+     * @param numBytes
+     *            the number of bytes to skip.
+     */
+    private static void skip(ByteBuffer buf, int numBytes)
+    {
+        buf.position(buf.position() + numBytes);
+    }
+
+    /**
+     * Converts a text world file to a binary world file, then compares how
+     * long each takes to load.
+     *
+     * @param args
+     *            the text world file and the binary world file to write.
+     * @throws IOException
+     *             if a file cannot be read or written.
+     */
+    public static void main(String[] args) throws IOException
+    {
+        File text = new File(args[0]);
+        File binary = new File(args[1]);
+        write(new WorldLoader().load(text, 1L), binary);
+        System.out.printf("Wrote %s: %d bytes (text: %d bytes)\n", binary,
+            binary.length(), text.length());
+
+        long start = System.nanoTime();
+        read(binary, 1L);
+        System.out.printf("Binary load took %.1f ms\n",
+            (System.nanoTime() - start) / 1e6);
+
+        WorldLoader loader = new WorldLoader();
+        loader.load(text, 1L);
+        System.out.println(loader.report());
+
+        start = System.nanoTime();
+        new MarkovDecisionProcess(new Scanner(text), 1L);
+        System.out.printf("Scanner took %.1f ms\n",
+            (System.nanoTime() - start) / 1e6);
+    }
+}
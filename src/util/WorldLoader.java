@@ -0,0 +1,501 @@
+package util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Random;
+import java.util.Scanner;
+
+/**
+ * Loads an MDP from the text format written by GridWorld. The text is
+ * memory-mapped (or wrapped, for a String) and split into tokens by hand
+ * rather than with a Scanner, and state names are decoded straight to their
+ * grid location, so loading takes time linear in the size of the text. The
+ * loader records how long the last load took.
+ *
+ * @author agent
+ * @version 2026-10-17
+ *
+ */
+public class WorldLoader
+{
+    private static final int NUM_LETTERS = 26;
+    // powers of ten that are exact doubles
+    private static final double[] POWERS_OF_TEN = {1e0, 1e1, 1e2, 1e3, 1e4,
+        1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15};
+    private ByteBuffer buf;
+    private int pos;
+    private int limit;
+    private int tokenStart;
+    private int[][] grid;
+    private long bytes;
+    private long nanos;
+    private int numStates;
+    private int numTransitions;
+
+    /**
+     * Loads the MDP from a file.
+     *
+     * @param file
+     *            the file.
+     * @param seed
+     *            the seed for the MDP's random number generator, or null.
+     * @return the MDP.
+     * @throws IOException
+     *             if the file cannot be read.
+     */
+    public MarkovDecisionProcess load(File file, Long seed) throws IOException
+    {
+        try (RandomAccessFile in = new RandomAccessFile(file, "r");
+            FileChannel channel = in.getChannel())
+        {
+            if (channel.size() > Integer.MAX_VALUE)
+            {
+                throw new IOException(file + " is too large to map");
+            }
+            return load(channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                channel.size()), seed);
+        }
+    }
+
+    /**
+     * Loads the MDP from a String, e.g., from
+     * GridWorld.createRandomGridWorld.
+     *
+     * @param world
+     *            the text of the world.
+     * @param seed
+     *            the seed for the MDP's random number generator, or null.
+     * @return the MDP.
+     */
+    public MarkovDecisionProcess load(String world, Long seed)
+    {
+        return load(ByteBuffer.wrap(world.getBytes(StandardCharsets.US_ASCII)),
+            seed);
+    }
+
+    /**
+     * Loads the MDP from the text in a buffer.
+     *
+     * @param text
+     *            the text of the world.
+     * @param seed
+     *            the seed for the MDP's random number generator, or null.
+     * @return the MDP.
+     */
+    public MarkovDecisionProcess load(ByteBuffer text, Long seed)
+    {
+        long start = System.nanoTime();
+        buf = text;
+        pos = text.position();
+        limit = text.limit();
+        bytes = limit - pos;
+
+        // read and create the states with their rewards.
+        numStates = nextInt();
+        String[] stateNames = new String[numStates];
+        double[] rewards = new double[numStates];
+        int[] rows = new int[numStates];
+        int[] cols = new int[numStates];
+        for (int i = 0; i < numStates; i++)
+        {
+            nextToken();
+            rows[i] = tokenRow();
+            cols[i] = tokenCol();
+            stateNames[i] = tokenString();
+            rewards[i] = nextInt();
+        }
+        grid = MarkovDecisionProcess.grid(rows, cols);
+        // read the goal states
+        BitSet terminal = new BitSet(numStates);
+        while (nextIsName())
+        {
+            terminal.set(nextState());
+        }
+
+        // read the actions and their uncertainty
+        int numActions = nextInt();
+        ArrayList<String> names = new ArrayList<String>(numActions);
+        double[][] actionUncertainty = new double[numActions][numActions];
+        for (int i = 0; i < numActions; i++)
+        {
+            nextToken();
+            names.add(tokenString());
+            for (int j = 0; j < numActions; j++)
+            {
+                actionUncertainty[i][j] = nextDouble();
+            }
+        }
+        ActionSpace actions = new ActionSpace(names);
+        byte[][] actionBytes = new byte[numActions][];
+        for (int i = 0; i < numActions; i++)
+        {
+            actionBytes[i] = names.get(i).getBytes(StandardCharsets.US_ASCII);
+        }
+
+        // read the transitions
+        numTransitions = nextInt();
+        TransitionModel.Builder builder = new TransitionModel.Builder(
+            numStates, numActions, numTransitions * numActions);
+        for (int i = 0; i < numTransitions; i++)
+        {
+            int s0 = nextState();
+            int a = nextAction(actionBytes);
+            int s1 = nextState();
+            for (int j = 0; j < numActions; j++)
+            {
+                builder.add(s0, j, s1, actionUncertainty[j][a]);
+            }
+        }
+        TransitionModel transitions = builder.build();
+
+        double gamma = nextDouble();
+        int current = nextState();
+        Random rand = (seed == null) ? new Random() : new Random(seed);
+        MarkovDecisionProcess mdp = new MarkovDecisionProcess(stateNames,
+            rewards, terminal, rows, cols, actions, actionUncertainty,
+            transitions, gamma, current, rand);
+        buf = null;
+        grid = null;
+        nanos = System.nanoTime() - start;
+        return mdp;
+    }
+
+    /**
+     * @return the number of bytes of text parsed by the last load.
+     */
+    public long getBytes()
+    {
+        return bytes;
+    }
+
+    /**
+     * @return the time taken by the last load, in nanoseconds.
+     */
+    public long getParseNanos()
+    {
+        return nanos;
+    }
+
+    /**
+     * @return the throughput of the last load, in megabytes per second.
+     */
+    public double getThroughput()
+    {
+        return (bytes / 1e6) / (nanos / 1e9);
+    }
+
+    /**
+     * @return a summary of the last load.
+     */
+    public String report()
+    {
+        return String.format("Loaded %d states and %d transitions from %d "
+            + "bytes in %.1f ms (%.1f MB/s)", numStates, numTransitions,
+            bytes, nanos / 1e6, getThroughput());
+    }
+
+    /**
+     * Helper method finds the next token.
+     */
+    private void nextToken()
+    {
+        while (pos < limit && buf.get(pos) <= ' ')
+        {
+            pos++;
+        }
+        if (pos >= limit)
+        {
+            throw new IllegalArgumentException("Unexpected end of world");
+        }
+        tokenStart = pos;
+        while (pos < limit && buf.get(pos) > ' ')
+        {
+            pos++;
+        }
+    }
+
+    /**
+     * @return true if the next token starts with a letter.
+     */
+    private boolean nextIsName()
+    {
+        int p = pos;
+        while (p < limit && buf.get(p) <= ' ')
+        {
+            p++;
+        }
+        return p < limit && isLetter(buf.get(p));
+    }
+
+    /**
+     * @param c
+     *            a character.
+     * @return true if it is a lower case letter.
+     */
+    private static boolean isLetter(byte c)
+    {
+        return c >= 'a' && c <= 'z';
+    }
+
+    /**
+     * @param c
+     *            a character.
+     * @return true if it is a digit.
+     */
+    private static boolean isDigit(byte c)
+    {
+        return c >= '0' && c <= '9';
+    }
+
+    /**
+     * @return the current token as a String.
+     */
+    private String tokenString()
+    {
+        byte[] token = new byte[pos - tokenStart];
+        for (int i = 0; i < token.length; i++)
+        {
+            token[i] = buf.get(tokenStart + i);
+        }
+        return new String(token, StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Helper method to report a malformed token.
+     *
+     * @param what
+     *            what the token should have been.
+     * @return the exception to throw.
+     */
+    private IllegalArgumentException malformed(String what)
+    {
+        return new IllegalArgumentException("Expected " + what + " at byte "
+            + tokenStart + " but found '" + tokenString() + "'");
+    }
+
+    /**
+     * @return the next token as an int.
+     */
+    private int nextInt()
+    {
+        nextToken();
+        int p = tokenStart;
+        boolean negative = buf.get(p) == '-';
+        if (negative)
+        {
+            p++;
+        }
+        if (p == pos)
+        {
+            throw malformed("an integer");
+        }
+        long value = 0;
+        for (; p < pos; p++)
+        {
+            byte c = buf.get(p);
+            if (!isDigit(c) || value > Integer.MAX_VALUE)
+            {
+                throw malformed("an integer");
+            }
+            value = 10 * value + (c - '0');
+        }
+        value = negative ? -value : value;
+        if (value != (int) value)
+        {
+            throw malformed("an integer");
+        }
+        return (int) value;
+    }
+
+    /**
+     * Returns the next token as a double. A plain decimal of at most 15
+     * digits, like the probabilities and rewards GridWorld writes, is
+     * decoded from the bytes: its digits and the power of ten are exact
+     * doubles, so one division rounds it just as Double.parseDouble would.
+     * Anything else is left to Double.parseDouble.
+     *
+     * @return the next token as a double.
+     */
+    private double nextDouble()
+    {
+        nextToken();
+        int p = tokenStart;
+        boolean negative = buf.get(p) == '-';
+        if (negative)
+        {
+            p++;
+        }
+        long digits = 0;
+        int numDigits = 0;
+        int scale = 0;
+        boolean point = false;
+        for (; p < pos; p++)
+        {
+            byte c = buf.get(p);
+            if (isDigit(c) && numDigits < POWERS_OF_TEN.length - 1)
+            {
+                digits = 10 * digits + (c - '0');
+                numDigits++;
+                scale += point ? 1 : 0;
+            }
+            else if (c == '.' && !point)
+            {
+                point = true;
+            }
+            else
+            {
+                return parseToken();
+            }
+        }
+        if (numDigits == 0)
+        {
+            return parseToken();
+        }
+        double value = digits / POWERS_OF_TEN[scale];
+        return negative ? -value : value;
+    }
+
+    /**
+     * @return the current token parsed by Double.parseDouble.
+     */
+    private double parseToken()
+    {
+        try
+        {
+            return Double.parseDouble(tokenString());
+        }
+        catch (NumberFormatException e)
+        {
+            throw malformed("a number");
+        }
+    }
+
+    /**
+     * @return the row index decoded from the letters of the current token.
+     */
+    private int tokenRow()
+    {
+        int row = 0;
+        int p = tokenStart;
+        while (p < pos && isLetter(buf.get(p)))
+        {
+            if (row > (Integer.MAX_VALUE - NUM_LETTERS) / NUM_LETTERS)
+            {
+                throw malformed("a state name");
+            }
+            row = NUM_LETTERS * row + (buf.get(p) - 'a');
+            p++;
+        }
+        // 'a' is a zero digit, so only a single-letter row starts with it,
+        // as in GridWorld.rowColToName; "aa1" would alias "a1"
+        if (p == tokenStart
+            || (p - tokenStart > 1 && buf.get(tokenStart) == 'a'))
+        {
+            throw malformed("a state name");
+        }
+        return row;
+    }
+
+    /**
+     * @return the column index decoded from the digits of the current token.
+     */
+    private int tokenCol()
+    {
+        int p = tokenStart;
+        while (p < pos && isLetter(buf.get(p)))
+        {
+            p++;
+        }
+        // names never have leading zeros
+        if (p == pos || buf.get(p) == '0')
+        {
+            throw malformed("a state name");
+        }
+        int col = 0;
+        for (; p < pos; p++)
+        {
+            byte c = buf.get(p);
+            if (!isDigit(c) || col > (Integer.MAX_VALUE - 9) / 10)
+            {
+                throw malformed("a state name");
+            }
+            col = 10 * col + (c - '0');
+        }
+        return col - 1;
+    }
+
+    /**
+     * @return the index of the state named by the next token.
+     */
+    private int nextState()
+    {
+        nextToken();
+        int row = tokenRow();
+        int col = tokenCol();
+        int index = (row < grid.length && col < grid[row].length)
+            ? grid[row][col] : -1;
+        if (index < 0)
+        {
+            throw malformed("a known state");
+        }
+        return index;
+    }
+
+    /**
+     * Helper method matches the next token against the action names.
+     *
+     * @param actions
+     *            the bytes of each action name.
+     * @return the index of the action.
+     */
+    private int nextAction(byte[][] actions)
+    {
+        nextToken();
+        int length = pos - tokenStart;
+        for (int a = 0; a < actions.length; a++)
+        {
+            byte[] name = actions[a];
+            if (name.length == length)
+            {
+                int i = 0;
+                while (i < length && buf.get(tokenStart + i) == name[i])
+                {
+                    i++;
+                }
+                if (i == length)
+                {
+                    return a;
+                }
+            }
+        }
+        throw malformed("an action");
+    }
+
+    /**
+     * Loads a world file with both the Scanner and this loader and reports
+     * how long each took.
+     *
+     * @param args
+     *            the world file.
+     * @throws IOException
+     *             if the file cannot be read.
+     */
+    public static void main(String[] args) throws IOException
+    {
+        File file = new File(args[0]);
+        WorldLoader loader = new WorldLoader();
+        loader.load(file, 1L);
+        System.out.println(loader.report());
+
+        long start = System.nanoTime();
+        new MarkovDecisionProcess(new Scanner(file), 1L);
+        System.out.printf("Scanner took %.1f ms\n",
+            (System.nanoTime() - start) / 1e6);
+    }
+}